@@ -0,0 +1,38 @@
+package xeraction.lettercode.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import xeraction.lettercode.ExecutionContext;
+import xeraction.lettercode.instructions.IfInstruction;
+import xeraction.lettercode.util.Condition;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluating simple and chained conditions on int, double and string variables
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConditionBenchmark {
+    @Param({"AltB", "AltDpi1i", "SetT", "AltBaBgtAoAetB", "AltBaBgtAoAetBxDgti0iaSatT"})
+    public String condition;
+
+    private Condition compiled;
+    private ExecutionContext context;
+
+    @Setup
+    public void setup() {
+        String vars = "vAei1ilvBei2ilvDed1.5dlvSesxslvTesysl";
+        Programs.Prepared prepared = Programs.prepare(vars + "j" + condition + "thAlzxl", 5);
+        compiled = ((IfInstruction)prepared.instructions().get(5)).getCondition();
+        context = prepared.context();
+    }
+
+    @Benchmark
+    public boolean evaluate() {
+        return compiled.evaluate(context);
+    }
+}
@@ -0,0 +1,46 @@
+package xeraction.lettercode.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import xeraction.lettercode.Lettercode;
+import xeraction.lettercode.LettercodeProgram;
+import xeraction.lettercode.compiler.Compiler;
+import xeraction.lettercode.util.ListInput;
+import xeraction.lettercode.vm.Lowering;
+import xeraction.lettercode.vm.Machine;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and running the example programs (with stubbed input) end to end on every engine
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExampleBenchmark {
+    @Param({"print42", "weird", "gcd", "factorial", "fibonacci"})
+    public String program;
+
+    @Param({"interpreter", "vm", "compiled"})
+    public String engine;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = Programs.EXAMPLES.get(program);
+    }
+
+    @Benchmark
+    public void run() {
+        LettercodeProgram parsed = Lettercode.compile(source);
+        switch (engine) {
+            case "vm" -> new Machine(Lowering.lower(parsed.getInstructions(), parsed.getFrameSizes()), new ListInput(List.of()), Programs.NO_OUTPUT).run();
+            case "compiled" -> Compiler.compile(parsed.getInstructions(), parsed::run).accept(new ListInput(List.of()), Programs.NO_OUTPUT);
+            default -> parsed.run(new ListInput(List.of()), Programs.NO_OUTPUT);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package xeraction.lettercode.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import xeraction.lettercode.util.Input;
+import xeraction.lettercode.util.Value;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting user input of every type into value parts
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InputBenchmark {
+    @Param({"42", "-3.75", "x", "true", "hello world"})
+    public String input;
+
+    @Benchmark
+    public Value.ValuePart parse() {
+        return Input.parse(input);
+    }
+}
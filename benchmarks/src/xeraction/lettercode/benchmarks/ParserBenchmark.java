@@ -0,0 +1,43 @@
+package xeraction.lettercode.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import xeraction.lettercode.Lettercode;
+import xeraction.lettercode.instructions.Instruction;
+import xeraction.lettercode.util.Resolver;
+import xeraction.lettercode.util.TokenIterator;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing (and resolving) large generated programs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"1000", "100000"})
+    public int statements;
+
+    private String program;
+    private List<Instruction> parsed;
+
+    @Setup
+    public void setup() {
+        program = Programs.generate(statements);
+        parsed = Lettercode.parse(new TokenIterator(program), false);
+    }
+
+    @Benchmark
+    public List<Instruction> parse() {
+        return Lettercode.parse(new TokenIterator(program), false);
+    }
+
+    @Benchmark
+    public int[] resolve() {
+        return Resolver.resolveProgram(parsed);
+    }
+}
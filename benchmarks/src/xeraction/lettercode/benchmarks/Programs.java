@@ -0,0 +1,71 @@
+package xeraction.lettercode.benchmarks;
+
+import xeraction.lettercode.ExecutionContext;
+import xeraction.lettercode.Lettercode;
+import xeraction.lettercode.instructions.Instruction;
+import xeraction.lettercode.util.*;
+
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The programs used by the benchmarks
+ */
+public class Programs {
+    /**
+     * The programs from examples.txt with every user input replaced by a fixed value
+     */
+    public static final Map<String, String> EXAMPLES = Map.of(
+            "print42", "vVARei1ilrVARlti43ithVARps:gl42slVARpplzxl",
+            "weird", "vRESTei0ilvNUMei27ilrNUMgti1itRESTeNUMyi2iljRESTeti0itNUMqei2ilzetNUMei3inNUMpi1ilzhNUMlzxl",
+            "gcd", "vAei1071ilvBei462ilvRei0ilrAati0itReAyBljReti0ithBlxlzAeBlBeRlzxl",
+            "factorial", "vNUMei1ilvNei12ilrNgti0itNUMneNlNmei1ilzhNUMlxl",
+            "fibonacci", "vNei40iljNeti1iths1slxlzhs1gn1sljNeti2itxlzvFei0ilvFOei1ilvFTei1ilvIei3ilrIltNpi1itFeFOpFTlFOeFTlFTeFlIpplhFlzxl"
+    );
+
+    /**
+     * Generates a program with a mix of all instructions
+     * @param statements The number of top level statements
+     * @return The program source
+     */
+    public static String generate(int statements) {
+        StringBuilder s = new StringBuilder("vVei0il");
+        for (int i = 0; i < statements; i++) {
+            s.append(switch (i % 5) {
+                case 0 -> "vA" + i + "ei" + i + "inVpi3il";
+                case 1 -> "Vpei" + i + "il";
+                case 2 -> "jVlti" + i + "ithcacpi1ilzethsA" + i + "gsBslz";
+                case 3 -> "rVgti" + i + "itVmmlz";
+                default -> "hVpd1.5dl";
+            });
+        }
+        return s.append("xl").toString();
+    }
+
+    /**
+     * An output sink discarding everything, so printing programs don't measure the console
+     */
+    public static final OutputSink NO_OUTPUT = BufferedOutput.of(OutputStream.nullOutputStream());
+
+    /**
+     * Parses and resolves a program and executes its first instructions (usually the variable initializations)
+     * @param program The program source
+     * @param execute The number of top level instructions to execute
+     * @return The instructions of the program with the context they were executed in
+     */
+    public static Prepared prepare(String program, int execute) {
+        List<Instruction> instructions = Lettercode.parse(new TokenIterator(program), false);
+        ExecutionContext context = new ExecutionContext(Resolver.resolveProgram(instructions), new ListInput(List.of()), NO_OUTPUT);
+        for (int i = 0; i < execute; i++)
+            instructions.get(i).execute(context);
+        return new Prepared(instructions, context);
+    }
+
+    /**
+     * A partly executed program
+     * @param instructions The instructions of the program
+     * @param context The context the first instructions were executed in
+     */
+    public record Prepared(List<Instruction> instructions, ExecutionContext context) {}
+}
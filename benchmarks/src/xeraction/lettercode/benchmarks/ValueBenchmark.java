@@ -0,0 +1,77 @@
+package xeraction.lettercode.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import xeraction.lettercode.ExecutionContext;
+import xeraction.lettercode.instructions.PrintInstruction;
+import xeraction.lettercode.util.TokenIterator;
+import xeraction.lettercode.util.Value;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evaluating and modifying values for each pair of types that can be added
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValueBenchmark {
+    private static final Map<String, String> literals = Map.of(
+            "INT", "i7i",
+            "DOUBLE", "d2.5d",
+            "CHAR", "cac",
+            "BOOLEAN", "btrueb",
+            "STRING", "sabcs"
+    );
+
+    @Param({"INT_INT", "INT_DOUBLE", "INT_CHAR", "INT_BOOLEAN", "INT_STRING", "DOUBLE_INT", "DOUBLE_DOUBLE",
+            "CHAR_INT", "CHAR_CHAR", "BOOLEAN_INT", "STRING_INT", "STRING_STRING"})
+    public String types;
+
+    /**
+     * Two variables added together
+     */
+    private Value variables;
+
+    private ExecutionContext context;
+
+    /*
+    The literals for modifying
+     */
+    private Value base;
+    private Value mod;
+
+    @Setup
+    public void setup() {
+        String[] t = types.split("_");
+        String first = literals.get(t[0]);
+        String second = literals.get(t[1]);
+        Programs.Prepared prepared = Programs.prepare("vAe" + first + "lvBe" + second + "lhApBlxl", 2);
+        variables = ((PrintInstruction)prepared.instructions().get(2)).getValue();
+        context = prepared.context();
+        base = parse(first).evaluate(context);
+        mod = parse(second);
+    }
+
+    private static Value parse(String literal) {
+        Value v = new Value();
+        v.parse(new TokenIterator(literal + "l"));
+        return v;
+    }
+
+    @Benchmark
+    public Value evaluate() {
+        return variables.evaluate(context);
+    }
+
+    @Benchmark
+    public Value modify() {
+        //modify changes the value, so start from a fresh copy every time
+        Value v = base.clone();
+        v.modify(Value.Operator.PLUS, mod, context);
+        return v;
+    }
+}
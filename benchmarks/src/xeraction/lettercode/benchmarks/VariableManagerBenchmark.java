@@ -0,0 +1,70 @@
+package xeraction.lettercode.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import xeraction.lettercode.util.Resolver;
+import xeraction.lettercode.util.Value;
+import xeraction.lettercode.util.VariableManager;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding and accessing variables and pushing and popping scopes at different scope depths
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VariableManagerBenchmark {
+    @Param({"1", "8", "32"})
+    public int depth;
+
+    /**
+     * The number of variables on each depth
+     */
+    private static final int SLOTS = 4;
+
+    private final Value value = Value.ONE;
+
+    private VariableManager variables;
+
+    /**
+     * The scopes below the outermost one, one variable each
+     */
+    private Resolver.Scope[] scopes;
+
+    @Setup
+    public void setup() {
+        int[] sizes = new int[depth + 1];
+        Arrays.fill(sizes, SLOTS);
+        variables = new VariableManager(sizes);
+        for (int d = 0; d <= depth; d++)
+            for (int s = 0; s < SLOTS; s++)
+                variables.add(d, s, value);
+        scopes = new Resolver.Scope[depth + 1];
+        for (int d = 1; d <= depth; d++)
+            scopes[d] = new Resolver.Scope(d, 1);
+    }
+
+    @Benchmark
+    public void get(Blackhole bh) {
+        //the innermost and the outermost variables
+        bh.consume(variables.get(depth, SLOTS - 1));
+        bh.consume(variables.get(0, 0));
+    }
+
+    @Benchmark
+    public void scopes(Blackhole bh) {
+        //open every scope down to the depth with one variable each, then close them again
+        for (int d = 1; d <= depth; d++) {
+            variables.pushScope(scopes[d]);
+            variables.add(d, 0, value);
+            bh.consume(variables.get(d, 0));
+        }
+        for (int d = depth; d >= 1; d--)
+            variables.popScope(scopes[d]);
+    }
+}
@@ -0,0 +1,260 @@
+package xeraction.lettercode;
+
+import xeraction.lettercode.util.BufferedOutput;
+import xeraction.lettercode.util.FileInput;
+import xeraction.lettercode.util.InputProvider;
+import xeraction.lettercode.util.ListInput;
+import xeraction.lettercode.util.OutputSink;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Runs many programs, each with any number of input files, in parallel on virtual threads<br>
+ * Every program is parsed (or loaded precompiled) once and shared by all of its runs, every run writes its output to its own file<br>
+ * The programs come from either
+ * <ul>
+ *     <li>a directory: every .lc file in it, run once for each input file named after it (A.in or A.something.in, an input file belongs to the
+ *     program with the longest name it starts with), once without input if there is none</li>
+ *     <li>a manifest: one run per line, the program file followed by its input files (paths relative to the manifest, # starts a comment)</li>
+ * </ul>
+ */
+public class Batch {
+    /**
+     * One run of a program
+     * @param name The name of the run for reports and its output file
+     * @param program The program file
+     * @param inputs The input files, read in order
+     */
+    private record Job(String name, Path program, List<Path> inputs) {}
+
+    /**
+     * Runs a batch and reports the throughput
+     * @param source The directory or manifest
+     * @param outputDirectory Where the output files go, next to the input (or program) files if null
+     * @param parallelism The maximum number of runs at the same time
+     * @param compile Whether to compile the programs into JVM classes
+     * @param vm Whether to run the programs on the register machine
+     * @param optimize Whether to run the optimizer on the programs
+     * @return Whether every run succeeded
+     */
+    public static boolean run(Path source, Path outputDirectory, int parallelism, boolean compile, boolean vm, boolean optimize) {
+        List<Job> jobs = Files.isDirectory(source) ? directory(source) : manifest(source);
+        if (outputDirectory != null) {
+            try {
+                Files.createDirectories(outputDirectory);
+            } catch (IOException e) {
+                Lettercode.error("Couldn't create output directory.", e);
+            }
+        }
+
+        //parse every program once
+        Map<Path, BiConsumer<InputProvider, OutputSink>> programs = new HashMap<>();
+        AtomicInteger failed = new AtomicInteger();
+        for (Job job : jobs) {
+            Path program = job.program.toAbsolutePath().normalize();
+            if (programs.containsKey(program))
+                continue;
+            try {
+                programs.put(program, Lettercode.engine(Lettercode.load(program, optimize), compile, vm));
+            } catch (LettercodeException e) {
+                System.err.println(job.program + ": " + e.getMessage());
+                programs.put(program, null);
+            }
+        }
+
+        //run everything, at most parallelism runs at once
+        long[] latencies = new long[jobs.size()];
+        Arrays.fill(latencies, -1);
+        Semaphore permits = new Semaphore(parallelism);
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < jobs.size(); i++) {
+                Job job = jobs.get(i);
+                BiConsumer<InputProvider, OutputSink> program = programs.get(job.program.toAbsolutePath().normalize());
+                if (program == null) {
+                    failed.incrementAndGet();
+                    continue;
+                }
+                int index = i;
+                executor.execute(() -> {
+                    permits.acquireUninterruptibly();
+                    try {
+                        long runStart = System.nanoTime();
+                        if (run(job, program, outputDirectory))
+                            latencies[index] = System.nanoTime() - runStart;
+                        else
+                            failed.incrementAndGet();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+        long time = System.nanoTime() - start;
+
+        report(latencies, jobs.size(), failed.get(), time);
+        return failed.get() == 0;
+    }
+
+    /**
+     * Runs one job
+     * @return Whether the run succeeded
+     */
+    private static boolean run(Job job, BiConsumer<InputProvider, OutputSink> program, Path outputDirectory) {
+        //next to the first input file, or the program if the run has no input
+        Path directory = outputDirectory != null ? outputDirectory : (job.inputs.isEmpty() ? job.program : job.inputs.getFirst()).toAbsolutePath().getParent();
+        Path output = directory.resolve(job.name + ".out");
+        try (BufferedOutput out = BufferedOutput.file(output)) {
+            try {
+                program.accept(input(job), out);
+            } catch (LettercodeException e) {
+                System.err.println(job.name + ": " + e.getMessage());
+                return false;
+            }
+        } catch (IOException | LettercodeException e) {
+            System.err.println(job.name + ": Couldn't write output (" + e.getMessage() + ")");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The inputs of all input files of a job in order
+     */
+    private static InputProvider input(Job job) {
+        if (job.inputs.size() == 1) {
+            try {
+                return new FileInput(job.inputs.getFirst());
+            } catch (IOException e) {
+                Lettercode.error("Couldn't read input file " + job.inputs.getFirst() + ".", e);
+            }
+        }
+        List<String> lines = new ArrayList<>();
+        for (Path input : job.inputs) {
+            try {
+                lines.addAll(Files.readAllLines(input));
+            } catch (IOException e) {
+                Lettercode.error("Couldn't read input file " + input + ".", e);
+            }
+        }
+        return new ListInput(lines);
+    }
+
+    /**
+     * Collects the jobs for every program in a directory
+     */
+    private static List<Job> directory(Path directory) {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> list = Files.list(directory)) {
+            list.filter(Files::isRegularFile).sorted().forEach(files::add);
+        } catch (IOException e) {
+            Lettercode.error("Couldn't read the directory.", e);
+        }
+        //every input file belongs to the program with the longest name it starts with (a.b.in belongs to a.b.lc, not a.lc)
+        Map<Path, List<Path>> inputs = new LinkedHashMap<>();
+        for (Path program : files)
+            if (program.getFileName().toString().endsWith(".lc"))
+                inputs.put(program, new ArrayList<>());
+        for (Path input : files) {
+            String inputFile = input.getFileName().toString();
+            if (!inputFile.endsWith(".in"))
+                continue;
+            Path owner = null;
+            for (Path program : inputs.keySet()) {
+                String name = name(program);
+                if ((inputFile.equals(name + ".in") || inputFile.startsWith(name + ".")) && (owner == null || name.length() > name(owner).length()))
+                    owner = program;
+            }
+            if (owner != null)
+                inputs.get(owner).add(input);
+        }
+        List<Job> jobs = new ArrayList<>();
+        Map<String, Integer> names = new HashMap<>();
+        inputs.forEach((program, programInputs) -> {
+            if (programInputs.isEmpty())
+                jobs.add(job(names, name(program), program, List.of()));
+            for (Path input : programInputs) {
+                String file = input.getFileName().toString();
+                jobs.add(job(names, file.substring(0, file.length() - 3), program, List.of(input)));
+            }
+        });
+        return jobs;
+    }
+
+    /**
+     * Creates a job, numbering its name if the name is taken
+     * @param names How often every name was taken so far
+     */
+    private static Job job(Map<String, Integer> names, String name, Path program, List<Path> inputs) {
+        int count = names.merge(name, 1, Integer::sum);
+        return new Job(count == 1 ? name : name + "-" + count, program, inputs);
+    }
+
+    /**
+     * @return The name of a program file without its .lc extension
+     */
+    private static String name(Path program) {
+        String file = program.getFileName().toString();
+        return file.substring(0, file.length() - 3);
+    }
+
+    /**
+     * Collects the jobs listed in a manifest
+     */
+    private static List<Job> manifest(Path manifest) {
+        List<String> lines = List.of();
+        try {
+            lines = Files.readAllLines(manifest);
+        } catch (IOException e) {
+            Lettercode.error("Couldn't read the manifest.", e);
+        }
+        Path base = manifest.toAbsolutePath().getParent();
+        List<Job> jobs = new ArrayList<>();
+        Map<String, Integer> names = new HashMap<>();
+        for (String line : lines) {
+            line = line.strip();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+            String[] files = line.split("\\s+");
+            Path program = base.resolve(files[0]);
+            List<Path> inputs = new ArrayList<>();
+            for (int i = 1; i < files.length; i++)
+                inputs.add(base.resolve(files[i]));
+            //name the run after its first input, or its program if it has none (numbered if the name is taken)
+            String name = (inputs.isEmpty() ? program : inputs.getFirst()).getFileName().toString().replaceFirst("\\.(lc|in)$", "");
+            jobs.add(job(names, name, program, inputs));
+        }
+        return jobs;
+    }
+
+    /**
+     * Prints the number of runs, the throughput and the latency percentiles
+     */
+    private static void report(long[] latencies, int runs, int failed, long time) {
+        long[] succeeded = Arrays.stream(latencies).filter(l -> l >= 0).sorted().toArray();
+        double seconds = time / 1e9;
+        System.out.printf("%d runs (%d failed) in %.3f s: %.1f runs/s", runs, failed, seconds, succeeded.length / seconds);
+        if (succeeded.length > 0)
+            System.out.printf(", p50 %.3f ms, p99 %.3f ms", percentile(succeeded, 50) / 1e6, percentile(succeeded, 99) / 1e6);
+        System.out.println();
+    }
+
+    /**
+     * @param sorted The sorted values
+     * @param percent The percentile
+     * @return The value at the percentile (nearest rank)
+     */
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (int)Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+}
@@ -0,0 +1,172 @@
+package xeraction.lettercode;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * The Flight Recorder events of Lettercode<br>
+ * They are disabled by default, even in a running recording, and have to be enabled by name, e.g.<br>
+ * -XX:StartFlightRecording:filename=run.jfr,+lettercode.Parse#enabled=true,+lettercode.Loop#enabled=true,+lettercode.Execution#enabled=true<br>
+ * Whether an event is enabled is checked once before a loop or execution starts, never inside of it
+ */
+public class Events {
+    private static final String CATEGORY = "Lettercode";
+
+    private Events() {}
+
+    @Name("lettercode.Parse")
+    @Label("Parse")
+    @Description("Parsing a program, or loading it from its precompiled file")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static class Parse extends Event {
+        @Label("Source Length")
+        public int sourceLength;
+
+        @Label("Instructions")
+        @Description("The number of instructions outside of code bodies")
+        public int instructions;
+
+        @Label("Precompiled")
+        public boolean precompiled;
+    }
+
+    @Name("lettercode.Loop")
+    @Label("Loop")
+    @Description("A while or for loop running from its start to its end")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static class Loop extends Event {
+        @Label("Kind")
+        public String kind;
+
+        @Label("Position")
+        @Description("The position of the loop in the source code")
+        public int index;
+
+        @Label("Iterations")
+        public long iterations;
+
+        private static final Loop PROBE = new Loop();
+
+        /**
+         * Starts a loop event if loop events are enabled
+         * @param kind "while" or "for"
+         * @param index The position of the loop in the source code
+         * @return The started event, null if loop events are disabled
+         */
+        public static Loop start(String kind, int index) {
+            if (!PROBE.isEnabled())
+                return null;
+            Loop event = new Loop();
+            event.kind = kind;
+            event.index = index;
+            event.begin();
+            return event;
+        }
+
+        /**
+         * Ends and commits the event
+         * @param iterations The number of times the loop body ran
+         */
+        public void end(long iterations) {
+            this.iterations = iterations;
+            commit();
+        }
+    }
+
+    @Name("lettercode.Execution")
+    @Label("Execution")
+    @Description("One run of a program, with the scope and variable activity of the interpreter")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static class Execution extends Event {
+        @Label("Engine")
+        public String engine;
+
+        @Label("Scope Pushes")
+        @Description("Only code bodies that initialize variables push a scope, the others run in the scope around them")
+        public long scopePushes;
+
+        @Label("Scope Pops")
+        @Description("Only code bodies that initialize variables pop a scope, the others run in the scope around them")
+        public long scopePops;
+
+        @Label("Peak Scope Depth")
+        @Description("The most scopes at once, counting only code bodies that initialize variables")
+        public int peakScopeDepth;
+
+        @Label("Variable Lookups")
+        public long variableLookups;
+
+        @Label("Allocated")
+        @Description("The bytes allocated by the thread running the program, -1 if the thread can't measure them (e.g. a virtual thread)")
+        @DataAmount
+        public long allocated;
+
+        /**
+         * The bytes the thread allocated before the program started, -1 if it can't measure them
+         */
+        private transient long allocatedBefore;
+
+        private static final Execution PROBE = new Execution();
+
+        /**
+         * @return Whether execution events are enabled, so the interpreter has to count its scopes and lookups
+         */
+        public static boolean enabled() {
+            return PROBE.isEnabled();
+        }
+
+        /**
+         * Starts an execution event if execution events are enabled
+         * @param engine The engine running the program
+         * @return The started event, null if execution events are disabled
+         */
+        public static Execution start(String engine) {
+            if (!PROBE.isEnabled())
+                return null;
+            Execution event = new Execution();
+            event.engine = engine;
+            event.allocatedBefore = allocatedBytes();
+            event.begin();
+            return event;
+        }
+
+        /**
+         * Ends and commits the event
+         * @param context The context the program ran in, null if it didn't run in the interpreter
+         */
+        public void end(ExecutionContext context) {
+            end();
+            long after = allocatedBytes();
+            allocated = allocatedBefore == -1 || after == -1 ? -1 : after - allocatedBefore;
+            if (context != null) {
+                scopePushes = context.getVariables().getScopePushes();
+                scopePops = context.getVariables().getScopePops();
+                peakScopeDepth = context.getVariables().getPeakDepth();
+                variableLookups = context.getVariables().getLookups();
+            }
+            commit();
+        }
+
+        /**
+         * @return The bytes allocated by the current thread so far, -1 if it can't measure them (virtual threads,
+         * or measuring is turned off)
+         */
+        private static long allocatedBytes() {
+            return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package xeraction.lettercode;
+
+import xeraction.lettercode.instructions.Instruction;
+import xeraction.lettercode.util.Condition;
+import xeraction.lettercode.util.Input;
+import xeraction.lettercode.util.InputProvider;
+import xeraction.lettercode.util.OperandStack;
+import xeraction.lettercode.util.OutputSink;
+import xeraction.lettercode.util.Value;
+import xeraction.lettercode.util.VariableManager;
+
+/**
+ * The state of one execution of a program: its variables, where its input comes from and where its output goes<br>
+ * Every execution gets its own context, so one parsed program can run any number of times, also in parallel
+ */
+public class ExecutionContext {
+    private final VariableManager variables;
+    private final InputProvider input;
+    private final OutputSink output;
+
+    /**
+     * The operand stack values are evaluated on
+     */
+    private final OperandStack stack = new OperandStack();
+
+    /**
+     * Measures the instructions and conditions, null if the program isn't profiled
+     */
+    private final Profiler profiler;
+
+    /**
+     * Whether the program reached an exit instruction
+     */
+    private boolean exited = false;
+
+    public ExecutionContext(int[] frameSizes, InputProvider input, OutputSink output) {
+        this(frameSizes, input, output, null);
+    }
+
+    public ExecutionContext(int[] frameSizes, InputProvider input, OutputSink output, Profiler profiler) {
+        variables = new VariableManager(frameSizes, Events.Execution.enabled());
+        this.input = input;
+        this.output = output;
+        this.profiler = profiler;
+    }
+
+    /**
+     * Executes an instruction of the program, measuring it if the program is profiled<br>
+     * Without a profiler the check is never taken, so the JIT leaves the profiling code out<br>
+     * Errors without a position get the position of the instruction
+     * @param instruction The instruction
+     */
+    public void execute(Instruction instruction) {
+        try {
+            if (profiler == null) {
+                instruction.execute(this);
+                return;
+            }
+            profiler.enter(instruction);
+            try {
+                instruction.execute(this);
+            } finally {
+                profiler.exit();
+            }
+        } catch (LettercodeException e) {
+            throw e.at(instruction.getIndex());
+        }
+    }
+
+    /**
+     * Evaluates a condition of the program, measuring it if the program is profiled<br>
+     * Errors without a position get the position of the condition
+     * @param condition The condition
+     * @return Whether the condition is true
+     */
+    public boolean evaluate(Condition condition) {
+        try {
+            if (profiler == null)
+                return condition.evaluate(this);
+            profiler.enter(condition);
+            try {
+                return condition.evaluate(this);
+            } finally {
+                profiler.exit();
+            }
+        } catch (LettercodeException e) {
+            throw e.at(condition.getIndex());
+        }
+    }
+
+    /**
+     * @return Whether the instructions and conditions are measured by a profiler
+     */
+    public boolean isProfiled() {
+        return profiler != null;
+    }
+
+    public VariableManager getVariables() {
+        return variables;
+    }
+
+    public OperandStack getStack() {
+        return stack;
+    }
+
+    public InputProvider getInput() {
+        return input;
+    }
+
+    public OutputSink getOutput() {
+        return output;
+    }
+
+    /**
+     * Requests the next user input
+     * @return The input value part with its corresponding type
+     */
+    public Value.ValuePart input() {
+        return Input.next(input, output);
+    }
+
+    /**
+     * @return Whether the program reached an exit instruction (instead of an error)
+     */
+    public boolean hasExited() {
+        return exited;
+    }
+
+    void exit() {
+        exited = true;
+    }
+}
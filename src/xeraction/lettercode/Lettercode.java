@@ -1,16 +1,26 @@
 package xeraction.lettercode;
 
+import xeraction.lettercode.compiler.Compiler;
 import xeraction.lettercode.instructions.ExitInstruction;
 import xeraction.lettercode.instructions.Instruction;
 import xeraction.lettercode.instructions.Instructions;
 import xeraction.lettercode.instructions.VarModifyInstruction;
-import xeraction.lettercode.util.StringIterator;
+import xeraction.lettercode.util.*;
+import xeraction.lettercode.vm.Lowering;
+import xeraction.lettercode.vm.Machine;
+import xeraction.lettercode.vm.Program;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiConsumer;
 
 /*
 Welcome to Lettercode!
@@ -23,34 +33,303 @@ Have fun!
 public class Lettercode {
 
     public static void main(String[] args) {
-        //make sure the user actually provided a correct .lc file
-        if (args.length != 1)
-            error("You have to provide a file!");
+        OutputSink out = null;
+        try {
+            //read the options in front of the file
+            boolean compile = false, vm = false, batch = false, precompile = false, profile = false, optimize = true, report = false;
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            String path = null, input = null, output = null;
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--compile" -> compile = true;
+                    case "--vm" -> vm = true;
+                    case "--batch" -> batch = true;
+                    case "--precompile" -> precompile = true;
+                    case "--profile" -> profile = true;
+                    case "--no-optimize" -> optimize = false;
+                    case "--optimize-report" -> report = true;
+                    case "--parallelism" -> {
+                        if (++i == args.length || !args[i].matches("[1-9][0-9]{0,8}"))
+                            error("--parallelism needs a positive number!");
+                        parallelism = Integer.parseInt(args[i]);
+                    }
+                    case "--input" -> {
+                        if (++i == args.length)
+                            error("--input needs a file!");
+                        input = args[i];
+                    }
+                    case "--output" -> {
+                        if (++i == args.length)
+                            error("--output needs a file!");
+                        output = args[i];
+                    }
+                    default -> {
+                        if (path != null || arg.startsWith("--"))
+                            error("Unknown argument: " + arg);
+                        path = arg;
+                    }
+                }
+            }
 
-        File file = new File(args[0]);
-        if (!file.exists())
-            error("The provided file doesn't exist!");
+            //make sure the user actually provided a correct .lc file
+            if (path == null)
+                error("You have to provide a file!");
+            if (compile && vm)
+                error("Choose either --compile or --vm, not both!");
+            if (profile && (compile || vm))
+                error("Profiling only works in the interpreter, not with --compile or --vm!");
+            if (report && !optimize)
+                error("There is nothing to report without optimizing!");
 
-        //check for .lc extension
-        String[] nm = file.getName().split("\\.");
-        if (!nm[nm.length - 1].equals("lc"))
-            error("The provided file is not a .lc file!");
+            //run every program of a directory or manifest if requested
+            if (batch) {
+                if (input != null)
+                    error("The input files of a batch come from its directory or manifest!");
+                if (precompile)
+                    error("Precompile the programs of a batch one by one!");
+                if (profile)
+                    error("Profile the programs of a batch one by one!");
+                if (report)
+                    error("Report the optimizations of a batch's programs one by one!");
+                Path source = Path.of(path);
+                if (!Files.exists(source))
+                    error("The provided directory or manifest doesn't exist!");
+                if (!Batch.run(source, output == null ? null : Path.of(output), parallelism, compile, vm, optimize))
+                    System.exit(-1);
+                return;
+            }
 
-        //read the file
-        List<String> lines = new ArrayList<>();
-        try {
-            BufferedReader reader = new BufferedReader(new FileReader(file));
-            lines = reader.lines().toList();
-            reader.close();
-        } catch (Exception e) {
+            File file = new File(path);
+            if (!file.exists())
+                error("The provided file doesn't exist!");
+
+            //check for .lc extension
+            String[] nm = file.getName().split("\\.");
+            if (!nm[nm.length - 1].equals("lc"))
+                error("The provided file is not a .lc file!");
+
+            //only write the precompiled program if requested (unoptimized, it is optimized when loaded)
+            if (precompile) {
+                CharSequence source = read(file.toPath());
+                ProgramFile.save(ProgramFile.of(file.toPath()), source, compile(source, false).getInstructions());
+                return;
+            }
+
+            //read the input from a file instead of the console if requested
+            InputProvider in = new StdinInput();
+            if (input != null) {
+                try {
+                    in = new FileInput(Path.of(input));
+                } catch (Exception e) {
+                    error("Couldn't read input file.", e);
+                }
+            }
+
+            //write the output to a file instead of the console if requested
+            out = BufferedOutput.stdout();
+            if (output != null) {
+                try {
+                    out = BufferedOutput.file(Path.of(output));
+                } catch (Exception e) {
+                    error("Couldn't open output file.", e);
+                }
+            }
+
+            //parse the main code (or load it precompiled) and run it on the requested engine
+            LettercodeProgram program = load(file.toPath(), optimize);
+            if (report)
+                program.getOptimizations().forEach(System.err::println);
+            if (profile)
+                profile(program, file.toPath(), in, out);
+            else
+                engine(program, compile, vm).accept(in, out);
+        } catch (LettercodeException e) {
+            //show everything printed before the error
+            if (out != null) {
+                try {
+                    out.flush();
+                } catch (LettercodeException ignored) {}
+            }
+            System.err.println(e.getMessage());
+            if (e.getCause() != null)
+                e.getCause().printStackTrace();
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Reads the source code of a program file (the first line, everything after it is ignored)<br>
+     * The file is mapped into memory and parsed from there if it's plain ASCII, so the source never has to be copied onto the heap
+     * @param file The program file
+     * @return The source code
+     */
+    static CharSequence read(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() == 0)
+                error("The provided file is empty!");
+            if (channel.size() > Integer.MAX_VALUE)
+                error("The provided file is too large!");
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            //find the end of the first line
+            boolean ascii = true;
+            int end = 0;
+            while (end < buffer.limit()) {
+                byte b = buffer.get(end);
+                if (b == '\n' || b == '\r')
+                    break;
+                if (b < 0)
+                    ascii = false;
+                end++;
+            }
+            buffer.limit(end);
+            if (ascii)
+                return new AsciiSource(buffer);
+            return StandardCharsets.UTF_8.newDecoder().decode(buffer).toString();
+        } catch (IOException e) {
             error("Couldn't read provided file.", e);
+            return null;
         }
-        if (lines.isEmpty())
-            error("The provided file is empty!");
+    }
 
-        //parse the main code
-        String main = lines.getFirst();
-        List<Instruction> instructions = parse(new StringIterator(main), false);
+    /**
+     * Prepares a program for running on one of the engines
+     * @param program The program
+     * @param compile Whether to compile the program into a JVM class (falls back to the interpreter if it can't be compiled)
+     * @param vm Whether to run the program on the register machine
+     * @return Runs the program with an input provider and output sink, any number of times (also in parallel)
+     */
+    static BiConsumer<InputProvider, OutputSink> engine(LettercodeProgram program, boolean compile, boolean vm) {
+        if (vm) {
+            Program lowered = Lowering.lower(program.getInstructions(), program.getFrameSizes());
+            return (in, out) -> {
+                Events.Execution event = Events.Execution.start("vm");
+                try {
+                    new Machine(lowered, in, out).run();
+                    out.flush();
+                } finally {
+                    if (event != null)
+                        event.end(null);
+                }
+            };
+        }
+        if (compile) {
+            try {
+                BiConsumer<InputProvider, OutputSink> compiled = Compiler.compile(program.getInstructions(), program::run);
+                return (in, out) -> {
+                    Events.Execution event = Events.Execution.start("compiled");
+                    try {
+                        compiled.accept(in, out);
+                        out.flush();
+                    } finally {
+                        if (event != null)
+                            event.end(null);
+                    }
+                };
+            } catch (Compiler.UnsupportedException e) {
+                System.err.println("Can't compile this program (" + e.getMessage() + "), running it in the interpreter instead.");
+            }
+        }
+        return program::run;
+    }
+
+    /**
+     * Runs a program in the interpreter while measuring it, then writes the reports next to the program file
+     * (NAME.profile.txt with the nodes taking the most time and NAME.collapsed with the stacks for flame graph tools)<br>
+     * The reports are also written if the program fails
+     * @param program The program
+     * @param file The program file
+     * @param in Where the user input comes from
+     * @param out Where the output goes
+     */
+    private static void profile(LettercodeProgram program, Path file, InputProvider in, OutputSink out) {
+        String name = file.getFileName().toString();
+        name = name.substring(0, name.length() - 3);
+        Path report = file.resolveSibling(name + ".profile.txt"), collapsed = file.resolveSibling(name + ".collapsed");
+        Profiler profiler = new Profiler();
+        try {
+            program.run(in, out, profiler);
+        } finally {
+            profiler.write(report, collapsed);
+            System.err.println("Wrote the profile to " + report + " and " + collapsed);
+        }
+    }
+
+    /**
+     * Loads, optimizes and resolves a program file, using its precompiled .lcc file instead of parsing it if that is up to date
+     * @param file The program file
+     * @return The program
+     * @throws LettercodeException If the program can't be read or parsed
+     */
+    public static LettercodeProgram load(Path file) {
+        return load(file, true);
+    }
+
+    /**
+     * Loads and resolves a program file, using its precompiled .lcc file instead of parsing it if that is up to date
+     * @param file The program file
+     * @param optimize Whether to run the optimizer on the program
+     * @return The program
+     * @throws LettercodeException If the program can't be read or parsed
+     */
+    public static LettercodeProgram load(Path file, boolean optimize) {
+        //the event includes reading the file and the precompiled file
+        Events.Parse event = new Events.Parse();
+        event.begin();
+        CharSequence source = read(file);
+        List<Instruction> instructions = ProgramFile.load(ProgramFile.of(file), source);
+        if (instructions == null)
+            return compile(source, optimize, event);
+        event.end();
+        if (event.shouldCommit()) {
+            event.sourceLength = source.length();
+            event.instructions = instructions.size();
+            event.precompiled = true;
+            event.commit();
+        }
+        return program(instructions, optimize);
+    }
+
+    /**
+     * Parses, optimizes and resolves a program, so it can be run any number of times
+     * @param source The source code of the program
+     * @return The program
+     * @throws LettercodeException If the program can't be parsed
+     */
+    public static LettercodeProgram compile(CharSequence source) {
+        return compile(source, true);
+    }
+
+    /**
+     * Parses and resolves a program, so it can be run any number of times
+     * @param source The source code of the program
+     * @param optimize Whether to run the optimizer on the program
+     * @return The program
+     * @throws LettercodeException If the program can't be parsed
+     */
+    public static LettercodeProgram compile(CharSequence source, boolean optimize) {
+        Events.Parse event = new Events.Parse();
+        event.begin();
+        return compile(source, optimize, event);
+    }
+
+    /**
+     * Parses and resolves a program, so it can be run any number of times
+     * @param source The source code of the program
+     * @param optimize Whether to run the optimizer on the program
+     * @param event The begun parse event, ended and committed once the program is parsed
+     * @return The program
+     * @throws LettercodeException If the program can't be parsed
+     */
+    private static LettercodeProgram compile(CharSequence source, boolean optimize, Events.Parse event) {
+        List<Instruction> instructions = parse(new TokenIterator(source), false);
+        event.end();
+        if (event.shouldCommit()) {
+            event.sourceLength = source.length();
+            event.instructions = instructions.size();
+            event.commit();
+        }
         if (instructions.isEmpty())
             Lettercode.error("Empty instruction set. Aborting...");
 
@@ -58,18 +337,48 @@ public class Lettercode {
         if (!(instructions.getLast() instanceof ExitInstruction))
             Lettercode.error("The program doesn't end with an end instruction! Running complicated algorithm trying to guess where to put it... Putting it right here. Goodbye!");
 
-        //execute the instructions
-        for (Instruction inst : instructions)
-            inst.execute();
+        return program(instructions, optimize);
+    }
+
+    /**
+     * Resolves (and optimizes) parsed instructions into a program<br>
+     * The optimizer runs on the resolved program, not between parsing and resolving, so there are two passes:<br>
+     * -The program as written is resolved and its types inferred. This pass reports unknown variables and type errors,
+     * also in code the optimizer removes later<br>
+     * -The optimized program is resolved and its types inferred again, since the optimizer moves code bodies into other
+     * scopes and changes values. This pass only gives out slots and specializations, it never reports errors: removing
+     * code can leave a variable with one type where the program as written has several<br>
+     * Fusing comes last, fused instructions can't be resolved again.
+     * @param instructions The instructions of the program
+     * @param optimize Whether to run the optimizer on the program
+     * @return The program
+     */
+    private static LettercodeProgram program(List<Instruction> instructions, boolean optimize) {
+        //bind every variable to its slot and infer the types before running, so unknown variables and type errors are
+        //reported up front (also in code the optimizer removes)
+        int[] frameSizes = Resolver.resolveProgram(instructions);
+        TypeInference.inferProgram(instructions);
+        if (!optimize)
+            return new LettercodeProgram(instructions, frameSizes, List.of());
+        //the optimizer moves code bodies into other scopes and changes values, so slots and types are given out again
+        Optimizer optimizer = Optimizer.optimizeProgram(instructions);
+        frameSizes = Resolver.resolveProgram(instructions);
+        //errors are only reported for the program as written
+        TypeInference.specializeProgram(instructions);
+        //fused instructions can't be resolved again, so they are made last
+        Fusion fusion = Fusion.fuseProgram(instructions);
+        List<String> report = new ArrayList<>(optimizer.getReport());
+        report.addAll(fusion.getReport());
+        return new LettercodeProgram(instructions, frameSizes, report);
     }
 
     /**
      * Parse a sequence of instructions
-     * @param iterator The iterator with its position at the first character of the first instruction to parse
+     * @param iterator The iterator with its position at the first token of the first instruction to parse
      * @param body Whether parsing should stop when a 'z' (close code body) is reached
      * @return A list of fully parsed instructions
      */
-    public static List<Instruction> parse(StringIterator iterator, boolean body) {
+    public static List<Instruction> parse(TokenIterator iterator, boolean body) {
         List<Instruction> instructions = new ArrayList<>();
 
         while (iterator.hasNext()) {
@@ -91,50 +400,75 @@ public class Lettercode {
 
     /**
      * Parses one instruction
-     * @param iterator The iterator with its position at the first character of the instruction
+     * @param iterator The iterator with its position at the first token of the instruction
      * @return The parsed instruction
      */
-    public static Instruction parseInstruction(StringIterator iterator) {
+    public static Instruction parseInstruction(TokenIterator iterator) {
+        int index = iterator.getIndex();
         //check if it is a variable modification (uppercase variable name)
+        Instruction inst;
         if (Character.isUpperCase(iterator.current())) {
-            Instruction inst = new VarModifyInstruction();
-            return inst.parse(iterator);
+            inst = new VarModifyInstruction().parse(iterator);
+        } else {
+            //parse the current instruction
+            inst = Instructions.get(iterator.current());
+            if (inst == null)
+                error("Unknown instruction", iterator);
+            inst = inst.parse(iterator);
         }
-
-        //parse the current instruction
-        Instruction inst = Instructions.get(iterator.current());
-        if (inst == null)
-            error("Unknown instruction", iterator);
-        return inst.parse(iterator);
+        inst.setIndex(index);
+        return inst;
     }
 
     /**
-     * Prints an error message and exits
+     * Raises an error at the current position of the iterator
      * @param msg The error message
      * @param iterator The iterator with its position at the error
+     * @throws LettercodeException Always
+     */
+    public static void error(String msg, TokenIterator iterator) {
+        if (!iterator.hasNext())
+            throw new LettercodeException(msg + " (end of code, " + iterator.getIndex() + ")", iterator.getIndex(), null);
+        error(msg, iterator.current(), iterator.getIndex());
+    }
+
+    /**
+     * Raises an error at a position in the source code
+     * @param msg The error message
+     * @param character The character at the error
+     * @param index The position of the error
+     * @throws LettercodeException Always
+     */
+    public static void error(String msg, char character, int index) {
+        throw new LettercodeException(msg + " (" + character + ", " + index + ")", index, null);
+    }
+
+    /**
+     * Raises an error at a position in the source code that the message already names
+     * @param msg The error message
+     * @param index The position of the error
+     * @throws LettercodeException Always
      */
-    public static void error(String msg, StringIterator iterator) {
-        System.err.println(msg + " (" + iterator.current() + ", " + iterator.getIndex() + ")");
-        System.exit(-1);
+    public static void error(String msg, int index) {
+        throw new LettercodeException(msg, index, null);
     }
 
     /**
-     * Prints an error message and exits
+     * Raises an error
      * @param msg The error message
+     * @throws LettercodeException Always
      */
     public static void error(String msg) {
-        System.err.println(msg);
-        System.exit(-1);
+        throw new LettercodeException(msg, -1, null);
     }
 
     /**
-     * Prints an error message and exits
+     * Raises an error caused by an exception
      * @param msg The error message
-     * @param error An exception with stacktrace to print
+     * @param error The exception with the stacktrace to print
+     * @throws LettercodeException Always
      */
     public static void error(String msg, Throwable error) {
-        System.err.println(msg);
-        error.printStackTrace();
-        System.exit(-1);
+        throw new LettercodeException(msg, -1, error);
     }
 }
@@ -0,0 +1,40 @@
+package xeraction.lettercode;
+
+import java.io.Serial;
+
+/**
+ * An error in a Lettercode program, found while parsing or running it<br>
+ * Doesn't collect a stack trace, the position in the source is what matters
+ */
+public class LettercodeException extends RuntimeException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The position in the source the error was found at, -1 if unknown
+     */
+    private final int index;
+
+    public LettercodeException(String message, int index, Throwable cause) {
+        super(message, cause, false, false);
+        this.index = index;
+    }
+
+    /**
+     * @return The position in the source the error was found at, -1 if unknown
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Places an error found while running at the node of the program that failed
+     * @param index The position of the failing instruction or condition in the source, -1 if unknown
+     * @return This exception if it already has a position, otherwise the same error at the position
+     */
+    public LettercodeException at(int index) {
+        if (this.index != -1 || index == -1)
+            return this;
+        return new LettercodeException(getMessage() + " (" + index + ")", index, getCause());
+    }
+}
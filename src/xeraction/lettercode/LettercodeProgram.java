@@ -0,0 +1,89 @@
+package xeraction.lettercode;
+
+import xeraction.lettercode.instructions.ExitInstruction;
+import xeraction.lettercode.instructions.Instruction;
+import xeraction.lettercode.util.InputProvider;
+import xeraction.lettercode.util.OutputSink;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A parsed and resolved program, created by {@link Lettercode#compile(CharSequence)}<br>
+ * The program itself never changes while running, all state lives in the execution context of each run
+ */
+public class LettercodeProgram {
+    private final List<Instruction> instructions;
+
+    /**
+     * The frame sizes given by the resolver
+     */
+    private final int[] frameSizes;
+
+    /**
+     * The report of the optimizer, empty if the program wasn't optimized
+     */
+    private final List<String> optimizations;
+
+    LettercodeProgram(List<Instruction> instructions, int[] frameSizes, List<String> optimizations) {
+        this.instructions = instructions;
+        this.frameSizes = frameSizes;
+        this.optimizations = optimizations;
+    }
+
+    /**
+     * Runs the program in the interpreter until it reaches an exit instruction
+     * @param input Where the user input comes from
+     * @param output Where the output goes, flushed once the program is done
+     * @return The context the program ran in
+     * @throws LettercodeException If the program fails
+     */
+    public ExecutionContext run(InputProvider input, OutputSink output) {
+        return run(input, output, null);
+    }
+
+    /**
+     * Runs the program in the interpreter until it reaches an exit instruction, measuring its instructions and conditions
+     * @param input Where the user input comes from
+     * @param output Where the output goes, flushed once the program is done
+     * @param profiler The profiler to measure with, null to not measure anything
+     * @return The context the program ran in
+     * @throws LettercodeException If the program fails
+     */
+    public ExecutionContext run(InputProvider input, OutputSink output, Profiler profiler) {
+        Events.Execution event = Events.Execution.start("interpreter");
+        ExecutionContext context = new ExecutionContext(frameSizes, input, output, profiler);
+        try {
+            for (Instruction inst : instructions)
+                context.execute(inst);
+        } catch (ExitInstruction.Exit e) {
+            context.exit();
+        } finally {
+            output.flush();
+            if (event != null)
+                event.end(context);
+        }
+        return context;
+    }
+
+    /**
+     * @return The instructions of the program (read only)
+     */
+    public List<Instruction> getInstructions() {
+        return Collections.unmodifiableList(instructions);
+    }
+
+    /**
+     * @return What the optimizer changed, a summary followed by one line per change (empty if the program wasn't optimized)
+     */
+    public List<String> getOptimizations() {
+        return Collections.unmodifiableList(optimizations);
+    }
+
+    /**
+     * @return The number of variable slots for each scope depth
+     */
+    public int[] getFrameSizes() {
+        return frameSizes.clone();
+    }
+}
@@ -0,0 +1,134 @@
+package xeraction.lettercode;
+
+import xeraction.lettercode.instructions.Instruction;
+import xeraction.lettercode.util.Condition;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures how often every instruction and condition of one execution runs and how long it takes (see --profile)<br>
+ * Nothing is sampled: every node is timed when it is entered and left. The language has no functions,
+ * so every node is always reached through the same nodes and its stack is just the nodes around it.
+ */
+public class Profiler {
+    /**
+     * The measurements of one node
+     */
+    private static final class Node {
+        private final Object node;
+        private final Node parent;
+        private long count;
+        private long total;
+
+        /**
+         * The time spent in the nodes inside this one
+         */
+        private long inner;
+
+        private Node(Object node, Node parent) {
+            this.node = node;
+            this.parent = parent;
+        }
+
+        private long self() {
+            return total - inner;
+        }
+    }
+
+    private final Map<Object, Node> nodes = new IdentityHashMap<>();
+
+    /*
+    The nodes currently running and when they were entered
+     */
+    private Node current = null;
+    private long[] starts = new long[16];
+    private int depth = 0;
+
+    /**
+     * Starts measuring an instruction or condition
+     * @param node The instruction or condition, running inside the node entered last
+     */
+    public void enter(Object node) {
+        Node n = nodes.get(node);
+        if (n == null) {
+            n = new Node(node, current);
+            nodes.put(node, n);
+        }
+        current = n;
+        if (depth == starts.length) {
+            long[] bigger = new long[depth * 2];
+            System.arraycopy(starts, 0, bigger, 0, depth);
+            starts = bigger;
+        }
+        starts[depth++] = System.nanoTime();
+    }
+
+    /**
+     * Stops measuring the node entered last
+     */
+    public void exit() {
+        long elapsed = System.nanoTime() - starts[--depth];
+        current.count++;
+        current.total += elapsed;
+        if (current.parent != null)
+            current.parent.inner += elapsed;
+        current = current.parent;
+    }
+
+    /**
+     * Writes the hot node report (every node sorted by the time spent in itself) and the collapsed stacks (for flame graph tools)
+     * @param report The report file
+     * @param collapsed The collapsed stack file, one line per node: the labels of the nodes around it separated by ';' and its own time in nanoseconds
+     */
+    public void write(Path report, Path collapsed) {
+        List<Node> sorted = new ArrayList<>(nodes.values());
+        sorted.sort((a, b) -> Long.compare(b.self(), a.self()));
+        long all = 0;
+        for (Node n : sorted)
+            all += n.self();
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(report))) {
+            out.printf("%12s %7s %12s %12s  %s%n", "self ms", "self %", "total ms", "count", "node");
+            for (Node n : sorted)
+                out.printf("%12.3f %6.2f%% %12.3f %12d  %s%n", n.self() / 1e6, all == 0 ? 0 : 100.0 * n.self() / all, n.total / 1e6, n.count, label(n.node));
+        } catch (IOException e) {
+            Lettercode.error("Couldn't write profile.", e);
+        }
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(collapsed))) {
+            for (Node n : sorted) {
+                if (n.self() <= 0)
+                    continue;
+                out.print(stack(n));
+                out.print(' ');
+                out.println(n.self());
+            }
+        } catch (IOException e) {
+            Lettercode.error("Couldn't write collapsed stacks.", e);
+        }
+    }
+
+    private static String stack(Node n) {
+        if (n.parent == null)
+            return label(n.node);
+        return stack(n.parent) + ";" + label(n.node);
+    }
+
+    /**
+     * @return The kind of a node with its position in the source code, e.g. "while@12"
+     */
+    private static String label(Object node) {
+        return switch (node) {
+            case Instruction i -> i.getClass().getSimpleName().replace("Instruction", "").toLowerCase() + "@" + i.getIndex();
+            case Condition c -> "condition@" + c.getIndex();
+            default -> node.toString();
+        };
+    }
+}
@@ -0,0 +1,369 @@
+package xeraction.lettercode.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A minimal class file writer for a class with a single static void method<br>
+ * Writes class file version 49, so the JVM verifies the code by type inference and no stack map frames are needed
+ */
+public class ClassBuilder {
+    /*
+    The opcodes used by the compiler
+     */
+    public static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC = 0x12, LDC_W = 0x13, LDC2_W = 0x14;
+    public static final int ILOAD = 0x15, DLOAD = 0x18, ALOAD = 0x19, ISTORE = 0x36, DSTORE = 0x39, ASTORE = 0x3a;
+    public static final int POP = 0x57, POP2 = 0x58, DUP = 0x59;
+    public static final int IADD = 0x60, DADD = 0x63, ISUB = 0x64, DSUB = 0x67, IMUL = 0x68, DMUL = 0x6b, DDIV = 0x6f, DREM = 0x73;
+    public static final int IAND = 0x7e, IOR = 0x80, IXOR = 0x82, I2D = 0x87, I2C = 0x92, DCMPL = 0x97, DCMPG = 0x98;
+    public static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e;
+    public static final int IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, IF_ICMPLT = 0xa1, IF_ICMPGE = 0xa2, IF_ICMPGT = 0xa3, IF_ICMPLE = 0xa4;
+    public static final int GOTO = 0xa7, RETURN = 0xb1, GETSTATIC = 0xb2, INVOKEVIRTUAL = 0xb6, INVOKESTATIC = 0xb8, INVOKEINTERFACE = 0xb9, WIDE = 0xc4;
+
+    /**
+     * The internal name of the class (slashes instead of dots)
+     */
+    private final String name;
+
+    /**
+     * The constant pool, already in its binary form
+     */
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+
+    /**
+     * The constant pool indices of the entries written so far
+     */
+    private final Map<String, Integer> poolIndices = new HashMap<>();
+
+    /**
+     * The next free constant pool index
+     */
+    private int poolSize = 1;
+
+    /**
+     * The bytecode of the method
+     */
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+    /**
+     * The jumps with known targets, as (jump position, target position)
+     */
+    private final List<int[]> jumps = new ArrayList<>();
+
+    /**
+     * The current and maximum operand stack height
+     */
+    private int stack = 0, maxStack = 0;
+
+    /**
+     * The number of local variable slots in use
+     */
+    private int maxLocals = 0;
+
+    public ClassBuilder(String name) {
+        this.name = name;
+    }
+
+    /**
+     * A jump target inside the method
+     */
+    public static class Label {
+        /**
+         * The position of the label in the code, -1 if not marked yet
+         */
+        private int position = -1;
+
+        /**
+         * The stack height at the label, -1 if unknown
+         */
+        private int stack = -1;
+
+        /**
+         * The positions of jump instructions that have to be patched once the label is marked
+         */
+        private final List<Integer> jumps = new ArrayList<>();
+    }
+
+    /**
+     * Writes an instruction without operands
+     * @param opcode The opcode
+     * @param stackDelta How much the instruction changes the stack height
+     */
+    public void op(int opcode, int stackDelta) {
+        code.write(opcode);
+        stack(stackDelta);
+    }
+
+    /**
+     * Pushes an int constant in the shortest form
+     * @param value The constant
+     */
+    public void intConst(int value) {
+        if (value >= -1 && value <= 5) {
+            code.write(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.write(BIPUSH);
+            code.write(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.write(SIPUSH);
+            writeShort(value);
+        } else {
+            ldc(constant(3, "I" + value, out -> out.writeInt(value)));
+            return;
+        }
+        stack(1);
+    }
+
+    /**
+     * Pushes a double constant
+     * @param value The constant
+     */
+    public void doubleConst(double value) {
+        int index = constant(6, "D" + Double.doubleToRawLongBits(value), out -> out.writeDouble(value));
+        code.write(LDC2_W);
+        writeShort(index);
+        stack(2);
+    }
+
+    /**
+     * Pushes a string constant
+     * @param value The constant
+     */
+    public void stringConst(String value) {
+        int utf = utf8(value);
+        ldc(constant(8, "S" + value, out -> out.writeShort(utf)));
+    }
+
+    private void ldc(int index) {
+        if (index < 256) {
+            code.write(LDC);
+            code.write(index);
+        } else {
+            code.write(LDC_W);
+            writeShort(index);
+        }
+        stack(1);
+    }
+
+    /**
+     * Writes a local variable load or store instruction
+     * @param opcode The load or store opcode
+     * @param index The local variable index
+     * @param stackDelta How much the instruction changes the stack height
+     */
+    public void local(int opcode, int index, int stackDelta) {
+        if (index < 256) {
+            code.write(opcode);
+            code.write(index);
+        } else {
+            code.write(WIDE);
+            code.write(opcode);
+            writeShort(index);
+        }
+        stack(stackDelta);
+    }
+
+    /**
+     * Reserves local variable slots
+     * @param size The number of slots (2 for doubles)
+     * @return The index of the first reserved slot
+     */
+    public int newLocal(int size) {
+        int index = maxLocals;
+        maxLocals += size;
+        return index;
+    }
+
+    /**
+     * Writes a field or method access instruction
+     * @param opcode GETSTATIC, INVOKEVIRTUAL or INVOKESTATIC
+     * @param owner The internal name of the owner class
+     * @param member The field or method name
+     * @param descriptor The field or method descriptor
+     * @param stackDelta How much the instruction changes the stack height
+     */
+    public void member(int opcode, String owner, String member, String descriptor, int stackDelta) {
+        int cls = classRef(owner);
+        int nameAndType = nameAndType(member, descriptor);
+        int tag = opcode == GETSTATIC ? 9 : 10;
+        int index = constant(tag, tag + owner + "." + member + descriptor, out -> {
+            out.writeShort(cls);
+            out.writeShort(nameAndType);
+        });
+        code.write(opcode);
+        writeShort(index);
+        stack(stackDelta);
+    }
+
+    /**
+     * Writes a call of an interface method without return value
+     * @param owner The internal name of the interface
+     * @param member The method name
+     * @param descriptor The method descriptor
+     * @param argumentSlots The number of stack slots the arguments take up (2 for doubles)
+     */
+    public void invokeInterface(String owner, String member, String descriptor, int argumentSlots) {
+        int cls = classRef(owner);
+        int nameAndType = nameAndType(member, descriptor);
+        int index = constant(11, "11" + owner + "." + member + descriptor, out -> {
+            out.writeShort(cls);
+            out.writeShort(nameAndType);
+        });
+        code.write(INVOKEINTERFACE);
+        writeShort(index);
+        //the receiver counts as an argument
+        code.write(argumentSlots + 1);
+        code.write(0);
+        stack(-argumentSlots - 1);
+    }
+
+    /**
+     * Writes a (conditional) jump
+     * @param opcode The jump opcode
+     * @param target The label to jump to
+     * @param stackDelta How much the instruction changes the stack height
+     */
+    public void jump(int opcode, Label target, int stackDelta) {
+        stack(stackDelta);
+        target.stack = stack;
+        if (target.position >= 0)
+            jumps.add(new int[] {code.size(), target.position});
+        else
+            target.jumps.add(code.size());
+        code.write(opcode);
+        writeShort(0);
+    }
+
+    /**
+     * Marks the label at the current position and patches all jumps to it
+     * @param label The label
+     */
+    public void mark(Label label) {
+        label.position = code.size();
+        if (label.stack >= 0)
+            stack = label.stack;
+        for (int jump : label.jumps)
+            jumps.add(new int[] {jump, label.position});
+    }
+
+    /**
+     * @return The size of the code written so far
+     */
+    public int codeSize() {
+        return code.size();
+    }
+
+    /**
+     * Writes the finished class file
+     * @param method The name of the static method
+     * @param descriptor The descriptor of the method, its parameters have to be reserved as the first locals
+     * @return The class file bytes
+     */
+    public byte[] toByteArray(String method, String descriptor) throws IOException {
+        int thisClass = classRef(name);
+        int superClass = classRef("java/lang/Object");
+        int methodName = utf8(method);
+        int methodDescriptor = utf8(descriptor);
+        int codeName = utf8("Code");
+        byte[] bytes = code.toByteArray();
+        //patch the jump offsets
+        for (int[] p : jumps) {
+            int offset = p[1] - p[0];
+            bytes[p[0] + 1] = (byte)(offset >> 8);
+            bytes[p[0] + 2] = (byte)offset;
+        }
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(result);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(49);
+        out.writeShort(poolSize);
+        pool.writeTo(out);
+        out.writeShort(0x31); //public final super
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(0); //interfaces
+        out.writeShort(0); //fields
+        out.writeShort(1); //methods
+        out.writeShort(0x09); //public static
+        out.writeShort(methodName);
+        out.writeShort(methodDescriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + bytes.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeShort(0); //exception table
+        out.writeShort(0); //code attributes
+        out.writeShort(0); //class attributes
+        return result.toByteArray();
+    }
+
+    private void stack(int delta) {
+        stack += delta;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    private void writeShort(int value) {
+        code.write(value >> 8);
+        code.write(value);
+    }
+
+    private int utf8(String value) {
+        return constant(1, "U" + value, out -> out.writeUTF(value));
+    }
+
+    private int classRef(String internalName) {
+        int utf = utf8(internalName);
+        return constant(7, "C" + internalName, out -> out.writeShort(utf));
+    }
+
+    private int nameAndType(String member, String descriptor) {
+        int n = utf8(member);
+        int d = utf8(descriptor);
+        return constant(12, "N" + member + descriptor, out -> {
+            out.writeShort(n);
+            out.writeShort(d);
+        });
+    }
+
+    /**
+     * Adds a constant pool entry unless an equal one exists already
+     * @param tag The constant pool tag
+     * @param key A key identifying the entry
+     * @param content Writes the content of the entry
+     * @return The index of the entry
+     */
+    private int constant(int tag, String key, PoolWriter content) {
+        Integer index = poolIndices.get(key);
+        if (index != null)
+            return index;
+        try {
+            poolOut.writeByte(tag);
+            content.write(poolOut);
+        } catch (IOException e) {
+            //only happens for strings too long for the constant pool
+            throw new Compiler.UnsupportedException("constant too large");
+        }
+        index = poolSize;
+        //doubles take up two entries
+        poolSize += tag == 6 ? 2 : 1;
+        if (poolSize > 0xFFFF)
+            throw new Compiler.UnsupportedException("too many constants");
+        poolIndices.put(key, index);
+        return index;
+    }
+
+    private interface PoolWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,72 @@
+package xeraction.lettercode.compiler;
+
+import xeraction.lettercode.Lettercode;
+import xeraction.lettercode.LettercodeException;
+import xeraction.lettercode.util.Input;
+import xeraction.lettercode.util.InputProvider;
+import xeraction.lettercode.util.OutputSink;
+import xeraction.lettercode.util.Value;
+
+import java.io.Serial;
+
+/**
+ * Helper methods called by compiled programs for operations that need the same error handling or string handling as the interpreter
+ */
+public class CompiledRuntime {
+    /**
+     * @param index The position in the source of the instruction or condition the operation belongs to
+     */
+    public static int divide(int a, int b, int index) {
+        if (b == 0)
+            Lettercode.error("Division by zero (" + index + ")", index);
+        return a / b;
+    }
+
+    /**
+     * @param index The position in the source of the instruction or condition the operation belongs to
+     */
+    public static int modulo(int a, int b, int index) {
+        if (b == 0)
+            Lettercode.error("Division by zero (" + index + ")", index);
+        return a % b;
+    }
+
+    /**
+     * Reads the next input, which compiled programs treat as an int
+     * @param index The position in the source of the instruction or condition the input belongs to
+     * @throws UnexpectedInput If the input isn't an int, so the interpreter has to take over (see Replay)
+     */
+    public static int input(InputProvider input, OutputSink output, int index) {
+        Value.ValuePart part;
+        try {
+            part = Input.next(input, output);
+        } catch (LettercodeException e) {
+            throw e.at(index);
+        }
+        if (!(part instanceof Value.IntPart p))
+            throw UnexpectedInput.INSTANCE;
+        return p.value();
+    }
+
+    public static Value.StringPart string(String value) {
+        return new Value.StringPart(Value.Operator.NONE, value);
+    }
+
+    public static Value.StringPart concat(Value.StringPart a, Value.StringPart b) {
+        return a.append(Value.Operator.NONE, b);
+    }
+
+    /**
+     * Thrown when a compiled program reads an input that isn't an int
+     */
+    static class UnexpectedInput extends RuntimeException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private static final UnexpectedInput INSTANCE = new UnexpectedInput();
+
+        private UnexpectedInput() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,482 @@
+package xeraction.lettercode.compiler;
+
+import xeraction.lettercode.instructions.*;
+import xeraction.lettercode.util.Condition;
+import xeraction.lettercode.util.Couple;
+import xeraction.lettercode.util.InputProvider;
+import xeraction.lettercode.util.OutputSink;
+import xeraction.lettercode.util.Resolver;
+import xeraction.lettercode.util.Value;
+
+import java.io.IOException;
+import java.io.Serial;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import static xeraction.lettercode.compiler.ClassBuilder.*;
+
+/**
+ * Compiles a parsed and resolved program into a JVM class, loaded as a hidden class<br>
+ * Every variable becomes a local of the method, so its type has to be known while compiling and can never change<br>
+ * User input is treated as an int. If a run reads anything else, the interpreter takes the run over (see Replay).<br>
+ * Everything that can't be compiled (type changes, combinations that would fail at runtime) throws an
+ * {@link UnsupportedException}, in which case the program should be run by the interpreter instead
+ */
+public class Compiler {
+    /**
+     * The internal name of the generated class (has to be in this package to be defined as a hidden class)
+     */
+    private static final String CLASS_NAME = "xeraction/lettercode/compiler/CompiledProgram";
+
+    private static final String RUNTIME = "xeraction/lettercode/compiler/CompiledRuntime";
+
+    private static final String OUTPUT_SINK = "xeraction/lettercode/util/OutputSink";
+
+    private static final String INPUT_PROVIDER = "xeraction/lettercode/util/InputProvider";
+
+    /**
+     * Strings are held as string parts, so appending to a string variable extends it in place like in the interpreter
+     */
+    private static final String STRING_PART = "xeraction/lettercode/util/Value$StringPart";
+
+    private final ClassBuilder code = new ClassBuilder(CLASS_NAME);
+
+    /**
+     * The locals of the variables currently alive, by the slot the resolver gave them
+     */
+    private final Map<Resolver.Slot, Local> locals = new HashMap<>();
+
+    /**
+     * The locals holding the output sink and the input provider, the parameters of the generated method
+     */
+    private final int sink = code.newLocal(1);
+    private final int input = code.newLocal(1);
+
+    /**
+     * Whether the program reads user input
+     */
+    private boolean readsInput = false;
+
+    /**
+     * The position in the source of the instruction or condition being compiled, given to operations that can fail
+     */
+    private int index = -1;
+
+    private Compiler() {}
+
+    /**
+     * Compiles a program
+     * @param instructions The resolved instructions of the program
+     * @param interpreter Runs the program in the interpreter, when a run reads an input that isn't an int
+     * @return The compiled program, ready to be run with the input provider and the output sink to print to
+     * @throws UnsupportedException If the program contains something the compiler can't handle
+     */
+    public static BiConsumer<InputProvider, OutputSink> compile(List<Instruction> instructions, BiConsumer<InputProvider, OutputSink> interpreter) {
+        Compiler compiler = new Compiler();
+        compiler.instructions(instructions);
+        compiler.code.op(RETURN, 0);
+        //the jump offsets are 16 bit
+        if (compiler.code.codeSize() > Short.MAX_VALUE)
+            throw new UnsupportedException("program too large");
+
+        MethodHandle run;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(compiler.code.toByteArray("run", "(L" + OUTPUT_SINK + ";L" + INPUT_PROVIDER + ";)V"), true);
+            run = lookup.findStatic(lookup.lookupClass(), "run", MethodType.methodType(void.class, OutputSink.class, InputProvider.class));
+        } catch (IOException | ReflectiveOperationException e) {
+            throw new UnsupportedException("couldn't load compiled class: " + e);
+        }
+        if (!compiler.readsInput)
+            return (in, out) -> run(run, in, out);
+        return (in, out) -> {
+            Replay replay = new Replay(in, out);
+            try {
+                run(run, replay, replay);
+            } catch (CompiledRuntime.UnexpectedInput e) {
+                replay.restart();
+                interpreter.accept(replay, replay);
+            }
+        };
+    }
+
+    private static void run(MethodHandle run, InputProvider in, OutputSink out) {
+        try {
+            run.invokeExact(out, in);
+        } catch (RuntimeException | Error e) {
+            //errors of the program itself
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private void instructions(List<Instruction> instructions) {
+        for (Instruction i : instructions)
+            instruction(i);
+    }
+
+    private void instruction(Instruction instruction) {
+        int outer = index;
+        index = instruction.getIndex();
+        switch (instruction) {
+            case VarInitInstruction inst -> {
+                Node value = expression(inst.getValue());
+                Local local = new Local(code.newLocal(size(value.type)), value.type);
+                emit(value);
+                store(local);
+                locals.put(new Resolver.Slot(inst.getDepth(), inst.getSlot()), local);
+            }
+            case VarModifyInstruction inst -> {
+                Local local = locals.get(new Resolver.Slot(inst.getDepth(), inst.getSlot()));
+                //the variable followed by the modification value with the operator, or the value itself when reassigning
+                Node value = expression(inst.getModification());
+                if (value.type != local.type)
+                    throw new UnsupportedException("variable " + inst.getName() + " changes its type");
+                emit(value);
+                store(local);
+            }
+            case PrintInstruction inst -> {
+                Node value = expression(inst.getValue());
+                code.local(ALOAD, sink, 1);
+                emit(value);
+                if (value.type == Value.Type.STRING)
+                    code.member(INVOKEVIRTUAL, STRING_PART, "value", "()Ljava/lang/String;", 0);
+                code.invokeInterface(OUTPUT_SINK, "println", "(" + descriptor(value.type) + ")V", size(value.type));
+            }
+            case IfInstruction inst -> {
+                Label otherwise = new Label(), end = new Label();
+                check(inst.getCondition());
+                code.jump(IFEQ, otherwise, -1);
+                instructions(inst.getIfInstructions());
+                code.jump(GOTO, end, 0);
+                code.mark(otherwise);
+                if (inst.hasElse())
+                    instructions(inst.getElseInstructions());
+                code.mark(end);
+            }
+            case WhileInstruction inst -> {
+                Label start = new Label(), end = new Label();
+                code.mark(start);
+                check(inst.getCondition());
+                code.jump(IFEQ, end, -1);
+                instructions(inst.getInstructions());
+                code.jump(GOTO, start, 0);
+                code.mark(end);
+            }
+            case ForInstruction inst -> {
+                Label start = new Label(), end = new Label();
+                instructions(inst.getTopStart());
+                code.mark(start);
+                check(inst.getTopCondition());
+                code.jump(IFEQ, end, -1);
+                instructions(inst.getLoop());
+                instructions(inst.getTopLoop());
+                code.jump(GOTO, start, 0);
+                code.mark(end);
+            }
+            case ExitInstruction inst -> code.op(RETURN, 0);
+            //the compiled code does the same as the instructions a fused instruction replaces
+            case FusedInstruction inst -> instructions(inst.unfused());
+            default -> throw new UnsupportedException("unknown instruction " + instruction.getClass().getSimpleName());
+        }
+        index = outer;
+    }
+
+    /**
+     * Compiles the condition of an if or a loop, errors in it are placed at the condition
+     * @param condition The condition
+     */
+    private void check(Condition condition) {
+        int outer = index;
+        index = condition.getIndex();
+        condition(condition);
+        index = outer;
+    }
+
+    /**
+     * Compiles a condition, leaving 1 (true) or 0 (false) on the stack
+     * @param condition The condition
+     */
+    private void condition(Condition condition) {
+        if (condition.isChain()) {
+            //chained from left to right, and and or skip the next part condition once the result is decided
+            List<Couple<Condition.ChainOperator, Condition>> chain = condition.getChain();
+            condition(chain.getFirst().second());
+            for (int i = 1; i < chain.size(); i++) {
+                Condition.ChainOperator op = chain.get(i).first();
+                if (op == Condition.ChainOperator.XOR) {
+                    condition(chain.get(i).second());
+                    code.op(IXOR, -1);
+                    continue;
+                }
+                //keep the result so far if it decides the chain, replace it with the next part condition otherwise
+                Label end = new Label();
+                code.op(DUP, 1);
+                code.jump(op == Condition.ChainOperator.AND ? IFEQ : IFNE, end, -1);
+                code.op(POP, -1);
+                condition(chain.get(i).second());
+                code.mark(end);
+            }
+            return;
+        }
+
+        Node first = expression(condition.getFirst());
+        Node second = expression(condition.getSecond());
+        Condition.CondOperator op = condition.getOperator();
+        if (first.type == Value.Type.STRING || second.type == Value.Type.STRING) {
+            if (first.type != second.type)
+                throw new UnsupportedException("comparison between " + first.type.name() + " and " + second.type.name());
+            if (op != Condition.CondOperator.EQUAL && op != Condition.CondOperator.NEQUAL)
+                throw new UnsupportedException("string comparison other than equality");
+            emit(first);
+            code.member(INVOKEVIRTUAL, STRING_PART, "value", "()Ljava/lang/String;", 0);
+            emit(second);
+            code.member(INVOKEVIRTUAL, STRING_PART, "value", "()Ljava/lang/String;", 0);
+            code.member(INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z", -1);
+            if (op == Condition.CondOperator.NEQUAL) {
+                code.intConst(1);
+                code.op(IXOR, -1);
+            }
+            return;
+        }
+
+        Label isTrue = new Label(), end = new Label();
+        emit(first);
+        if (isInt(first.type) && isInt(second.type)) {
+            //ints compare the same way as their double conversions do
+            emit(second);
+            code.jump(switch (op) {
+                case EQUAL -> IF_ICMPEQ;
+                case NEQUAL -> IF_ICMPNE;
+                case LESS -> IF_ICMPLT;
+                case LEQUAL -> IF_ICMPLE;
+                case GREATER -> IF_ICMPGT;
+                default -> IF_ICMPGE;
+            }, isTrue, -2);
+        } else {
+            toDouble(first.type);
+            emit(second);
+            toDouble(second.type);
+            //comparisons with NaN have to be false, so pick the compare instruction that yields the failing result for NaN
+            boolean less = op == Condition.CondOperator.LESS || op == Condition.CondOperator.LEQUAL;
+            code.op(less ? DCMPG : DCMPL, -3);
+            code.jump(switch (op) {
+                case EQUAL -> IFEQ;
+                case NEQUAL -> IFNE;
+                case LESS -> IFLT;
+                case LEQUAL -> IFLE;
+                case GREATER -> IFGT;
+                default -> IFGE;
+            }, isTrue, -1);
+        }
+        code.intConst(0);
+        code.jump(GOTO, end, 0);
+        code.mark(isTrue);
+        code.intConst(1);
+        code.mark(end);
+    }
+
+    /**
+     * Builds the combination tree of a value the same way Value.evaluate combines its parts
+     * @param value The value
+     * @return The node whose result is the result of the value
+     */
+    private Node expression(Value value) {
+        return value.translate(this::leaf, (in, mod, op) -> new Node(op, null, null, in, mod, combinedType(in.type, mod.type, op)));
+    }
+
+    private Node leaf(Value.ValuePart part) {
+        return switch (part) {
+            case Value.VarPart v -> {
+                Local local = locals.get(new Resolver.Slot(v.depth(), v.slot()));
+                yield new Node(Value.Operator.NONE, null, local, null, null, local.type);
+            }
+            case Value.InputPart i -> {
+                readsInput = true;
+                yield new Node(Value.Operator.NONE, part, null, null, null, Value.Type.INT);
+            }
+            default -> new Node(Value.Operator.NONE, part, null, null, null, part.type());
+        };
+    }
+
+    /**
+     * Returns the type two values are combined into, following the rules of Value.combine
+     * @param in The type of the base value
+     * @param mod The type of the modifier value
+     * @param op The operator
+     * @return The combined type
+     * @throws UnsupportedException If the combination fails at runtime
+     */
+    private Value.Type combinedType(Value.Type in, Value.Type mod, Value.Operator op) {
+        Value.Type type = switch (in) {
+            case INT -> mod == Value.Type.DOUBLE ? Value.Type.DOUBLE : mod == Value.Type.STRING ? null : Value.Type.INT;
+            case DOUBLE -> mod == Value.Type.STRING ? null : Value.Type.DOUBLE;
+            case CHAR -> mod == Value.Type.INT ? Value.Type.CHAR : mod == Value.Type.CHAR || mod == Value.Type.STRING ? null : Value.Type.UNKNOWN;
+            case BOOLEAN -> mod == Value.Type.INT || mod == Value.Type.DOUBLE ? mod : mod == Value.Type.STRING ? null : Value.Type.UNKNOWN;
+            default -> null;
+        };
+        //null stands for concatenation
+        if (type == null && op == Value.Operator.PLUS)
+            return Value.Type.STRING;
+        if (type == null || type == Value.Type.UNKNOWN)
+            throw new UnsupportedException("combination of " + in.name() + " and " + mod.name() + " with " + op.name());
+        return type;
+    }
+
+    /**
+     * Emits the code leaving the result of a node on the stack
+     * @param node The node
+     */
+    private void emit(Node node) {
+        if (node.local != null) {
+            load(node.local);
+            return;
+        }
+        if (node.literal != null) {
+            switch (node.literal) {
+                case Value.IntPart p -> code.intConst(p.value());
+                case Value.DoublePart p -> code.doubleConst(p.value());
+                case Value.CharPart p -> code.intConst(p.value());
+                case Value.BoolPart p -> code.intConst(p.value() ? 1 : 0);
+                case Value.StringPart p -> {
+                    code.stringConst(p.value());
+                    code.member(INVOKESTATIC, RUNTIME, "string", "(Ljava/lang/String;)L" + STRING_PART + ";", 0);
+                }
+                case Value.InputPart p -> {
+                    code.local(ALOAD, input, 1);
+                    code.local(ALOAD, sink, 1);
+                    code.intConst(index);
+                    code.member(INVOKESTATIC, RUNTIME, "input", "(L" + INPUT_PROVIDER + ";L" + OUTPUT_SINK + ";I)I", -2);
+                }
+                default -> throw new UnsupportedException("value part " + node.literal.type().name());
+            }
+            return;
+        }
+
+        Node left = node.left, right = node.right;
+        switch (node.type) {
+            case STRING -> {
+                emit(left);
+                toStringPart(left.type);
+                emit(right);
+                toStringPart(right.type);
+                code.member(INVOKESTATIC, RUNTIME, "concat", "(L" + STRING_PART + ";L" + STRING_PART + ";)L" + STRING_PART + ";", -1);
+            }
+            case DOUBLE -> {
+                emit(left);
+                toDouble(left.type);
+                emit(right);
+                toDouble(right.type);
+                code.op(switch (node.operator) {
+                    case PLUS -> DADD;
+                    case MINUS -> DSUB;
+                    case TIMES -> DMUL;
+                    case DIVIDE -> DDIV;
+                    default -> DREM;
+                }, -2);
+            }
+            default -> {
+                emit(left);
+                emit(right);
+                switch (node.operator) {
+                    case PLUS -> code.op(IADD, -1);
+                    case MINUS -> code.op(ISUB, -1);
+                    case TIMES -> code.op(IMUL, -1);
+                    //division by zero has to be reported like the interpreter does
+                    case DIVIDE -> {
+                        code.intConst(index);
+                        code.member(INVOKESTATIC, RUNTIME, "divide", "(III)I", -2);
+                    }
+                    default -> {
+                        code.intConst(index);
+                        code.member(INVOKESTATIC, RUNTIME, "modulo", "(III)I", -2);
+                    }
+                }
+                if (node.type == Value.Type.CHAR)
+                    code.op(I2C, 0);
+            }
+        }
+    }
+
+    private void toDouble(Value.Type type) {
+        if (type != Value.Type.DOUBLE)
+            code.op(I2D, 1);
+    }
+
+    private void toStringPart(Value.Type type) {
+        if (type != Value.Type.STRING) {
+            code.member(INVOKESTATIC, "java/lang/String", "valueOf", "(" + descriptor(type) + ")Ljava/lang/String;", 1 - size(type));
+            code.member(INVOKESTATIC, RUNTIME, "string", "(Ljava/lang/String;)L" + STRING_PART + ";", 0);
+        }
+    }
+
+    private void load(Local local) {
+        code.local(switch (local.type) {
+            case DOUBLE -> DLOAD;
+            case STRING -> ALOAD;
+            default -> ILOAD;
+        }, local.index, size(local.type));
+    }
+
+    private void store(Local local) {
+        code.local(switch (local.type) {
+            case DOUBLE -> DSTORE;
+            case STRING -> ASTORE;
+            default -> ISTORE;
+        }, local.index, -size(local.type));
+    }
+
+    /**
+     * @return Whether values of the type are represented as JVM ints
+     */
+    private static boolean isInt(Value.Type type) {
+        return type == Value.Type.INT || type == Value.Type.CHAR || type == Value.Type.BOOLEAN;
+    }
+
+    /**
+     * @return The number of stack and local slots values of the type take up
+     */
+    private static int size(Value.Type type) {
+        return type == Value.Type.DOUBLE ? 2 : 1;
+    }
+
+    private static String descriptor(Value.Type type) {
+        return switch (type) {
+            case INT -> "I";
+            case DOUBLE -> "D";
+            case CHAR -> "C";
+            case BOOLEAN -> "Z";
+            default -> "Ljava/lang/String;";
+        };
+    }
+
+    /**
+     * A local variable of the compiled method
+     * @param index The local variable index
+     * @param type The type of the variable
+     */
+    private record Local(int index, Value.Type type) {}
+
+    /**
+     * A node of a value's combination tree<br>
+     * Either a literal, a variable or the combination of two nodes with an operator (NONE for literals and variables)
+     */
+    private record Node(Value.Operator operator, Value.ValuePart literal, Local local, Node left, Node right, Value.Type type) {}
+
+    /**
+     * Thrown when a program can't be compiled
+     */
+    public static class UnsupportedException extends RuntimeException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        public UnsupportedException(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
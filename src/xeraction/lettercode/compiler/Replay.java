@@ -0,0 +1,96 @@
+package xeraction.lettercode.compiler;
+
+import xeraction.lettercode.util.InputProvider;
+import xeraction.lettercode.util.OutputSink;
+import xeraction.lettercode.util.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The input and output of a compiled run that reads user input, so the interpreter can take the run over<br>
+ * Compiled programs treat every input as an int. If an input turns out to be something else, the interpreter runs the
+ * program again from the start: it gets the inputs the compiled run already read again and the lines it already printed
+ * are skipped, the rest of the input and output goes on as if the interpreter ran the program all along.
+ */
+class Replay implements InputProvider, OutputSink {
+    private final InputProvider input;
+    private final OutputSink output;
+
+    /**
+     * The inputs read so far, and how many of them were handed out again after restarting
+     */
+    private final List<Value.ValuePart> inputs = new ArrayList<>();
+    private int replayed = 0;
+
+    /**
+     * The lines printed so far, and how many of them still have to be skipped after restarting
+     */
+    private long printed = 0;
+    private long skip = 0;
+
+    Replay(InputProvider input, OutputSink output) {
+        this.input = input;
+        this.output = output;
+    }
+
+    /**
+     * Starts the run again: the inputs read so far are handed out again and the lines printed so far are skipped
+     */
+    void restart() {
+        replayed = 0;
+        skip = printed;
+        printed = 0;
+    }
+
+    public Value.ValuePart next() {
+        if (replayed < inputs.size())
+            return inputs.get(replayed++);
+        Value.ValuePart part = input.next();
+        if (part != null) {
+            inputs.add(part);
+            replayed++;
+        }
+        return part;
+    }
+
+    /**
+     * @return Whether the line has been printed before restarting
+     */
+    private boolean skip() {
+        printed++;
+        if (skip == 0)
+            return false;
+        skip--;
+        return true;
+    }
+
+    public void println(int value) {
+        if (!skip())
+            output.println(value);
+    }
+
+    public void println(double value) {
+        if (!skip())
+            output.println(value);
+    }
+
+    public void println(char value) {
+        if (!skip())
+            output.println(value);
+    }
+
+    public void println(boolean value) {
+        if (!skip())
+            output.println(value);
+    }
+
+    public void println(String value) {
+        if (!skip())
+            output.println(value);
+    }
+
+    public void flush() {
+        output.flush();
+    }
+}
@@ -0,0 +1,342 @@
+package xeraction.lettercode.instructions;
+
+import xeraction.lettercode.Events;
+import xeraction.lettercode.ExecutionContext;
+import xeraction.lettercode.util.Condition;
+import xeraction.lettercode.util.Couple;
+import xeraction.lettercode.util.Resolver;
+import xeraction.lettercode.util.Value;
+import xeraction.lettercode.util.Variable;
+import xeraction.lettercode.util.VariableManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A while or for loop recognized as a counted loop: an int variable compared with a bound and changed by a constant every iteration<br>
+ * e.g. rIlti43it...Ippltz or fvIei0ilkIltNkIppltz<br>
+ * The loop runs with the counter in a local int instead of evaluating its condition and step instruction every time.
+ * The counter is only written back to its variable before the body if the body reads it, and once when the loop ends.
+ * Loops with a few iterations known up front (for loops starting at a literal) have their body unrolled.<br>
+ * Found by the resolver, so it also applies to loaded programs. If the counter or bound isn't an int when the loop starts,
+ * the loop runs normally instead.
+ */
+public class CountedLoop {
+    /**
+     * The most iterations and body instructions of an unrolled loop
+     */
+    private static final int UNROLL_ITERATIONS = 4;
+    private static final int UNROLL_INSTRUCTIONS = 8;
+
+    /*
+    The counter variable
+     */
+    private final int depth;
+    private final int slot;
+
+    /**
+     * The comparison of the counter with the bound
+     */
+    private final Condition.CondOperator op;
+
+    /**
+     * The bound: a constant, or a variable if boundSlot isn't -1
+     */
+    private final int bound;
+    private final int boundDepth;
+    private final int boundSlot;
+
+    /**
+     * The change of the counter after every iteration
+     */
+    private final int step;
+
+    /**
+     * The loop body without the step instruction
+     */
+    private Instruction[] body;
+
+    /**
+     * The scope of the loop body, null if it doesn't initialize variables
+     */
+    private final Resolver.Scope scope;
+
+    /**
+     * Whether the body reads the counter, so it has to be written back before every iteration
+     */
+    private final boolean readsCounter;
+
+    /**
+     * The body repeated for every iteration, null if the loop isn't unrolled
+     */
+    private Instruction[] unrolled;
+
+    /**
+     * The start of the counter and the number of iterations (only if unrolled)
+     */
+    private int start, iterations;
+
+    private CountedLoop(Value.VarPart counter, Condition condition, Value.VarPart boundVar, int bound, int step, List<Instruction> body, Usage usage, Resolver.Scope scope) {
+        depth = counter.depth();
+        slot = counter.slot();
+        op = condition.getOperator();
+        this.bound = bound;
+        boundDepth = boundVar == null ? -1 : boundVar.depth();
+        boundSlot = boundVar == null ? -1 : boundVar.slot();
+        this.step = step;
+        this.body = body.toArray(new Instruction[0]);
+        this.scope = scope;
+        readsCounter = usage.reads(depth, slot);
+    }
+
+    /**
+     * Recognizes a counted while loop, the step has to be the last instruction of its body
+     * @param condition The resolved condition of the loop
+     * @param instructions The resolved loop body
+     * @param scope The scope of the loop body
+     * @return The counted loop, null if the loop doesn't have the form of one
+     */
+    public static CountedLoop of(Condition condition, List<Instruction> instructions, Resolver.Scope scope) {
+        if (instructions.isEmpty())
+            return null;
+        return of(condition, instructions.getLast(), instructions.subList(0, instructions.size() - 1), scope);
+    }
+
+    /**
+     * Recognizes a counted for loop, the step has to be the only instruction of the third part of its head<br>
+     * The loop is unrolled if the first part of its head sets the counter to a literal and the bound is a literal
+     * @param topStart The resolved first part of the loop head
+     * @param condition The resolved condition of the loop
+     * @param topLoop The resolved third part of the loop head
+     * @param loop The resolved loop body
+     * @param scope The scope of the loop body and the third part of the head
+     * @return The counted loop, null if the loop doesn't have the form of one
+     */
+    public static CountedLoop of(List<Instruction> topStart, Condition condition, List<Instruction> topLoop, List<Instruction> loop, Resolver.Scope scope) {
+        if (topLoop.size() != 1)
+            return null;
+        CountedLoop counted = of(condition, topLoop.getFirst(), loop, scope);
+        if (counted != null)
+            counted.unroll(topStart);
+        return counted;
+    }
+
+    private static CountedLoop of(Condition condition, Instruction stepInstruction, List<Instruction> body, Resolver.Scope scope) {
+        //the condition compares the counter with an int literal or another variable
+        if (condition.isChain() || condition.getOperator() == Condition.CondOperator.NONE)
+            return null;
+        if (!(condition.getFirst().single() instanceof Value.VarPart counter))
+            return null;
+        Value.VarPart boundVar = null;
+        int bound = 0;
+        switch (condition.getSecond().single()) {
+            case Value.IntPart p -> bound = p.value();
+            case Value.VarPart v when v.depth() != counter.depth() || v.slot() != counter.slot() -> boundVar = v;
+            case null, default -> {
+                return null;
+            }
+        }
+
+        //the step adds or subtracts a constant int
+        if (!(stepInstruction instanceof VarModifyInstruction inst) || inst.getDepth() != counter.depth() || inst.getSlot() != counter.slot())
+            return null;
+        int step;
+        if (inst.isPlusPlus())
+            step = 1;
+        else if (inst.isMinusMinus())
+            step = -1;
+        else if (!inst.isReassign() && inst.getValue().single() instanceof Value.IntPart p && (inst.getOperator() == Value.Operator.PLUS || inst.getOperator() == Value.Operator.MINUS))
+            step = inst.getOperator() == Value.Operator.PLUS ? p.value() : -p.value();
+        else
+            return null;
+
+        //neither the counter nor the bound may be changed by the body
+        Usage usage = new Usage();
+        usage.instructions(body);
+        if (usage.writes(counter.depth(), counter.slot()) || (boundVar != null && usage.writes(boundVar.depth(), boundVar.slot())))
+            return null;
+        return new CountedLoop(counter, condition, boundVar, bound, step, body, usage, scope);
+    }
+
+    /**
+     * Unrolls the loop if its number of iterations is known and small
+     * @param topStart The first part of the loop head
+     */
+    private void unroll(List<Instruction> topStart) {
+        if (boundSlot != -1 || scope != null || readsCounter || body.length > UNROLL_INSTRUCTIONS)
+            return;
+        //the last instruction of the head setting the counter has to set it to a literal
+        Integer literal = null;
+        for (Instruction i : topStart) {
+            switch (i) {
+                case VarInitInstruction inst when inst.getDepth() == depth && inst.getSlot() == slot ->
+                        literal = inst.getValue().single() instanceof Value.IntPart p ? p.value() : null;
+                case VarModifyInstruction inst when inst.getDepth() == depth && inst.getSlot() == slot ->
+                        literal = inst.isReassign() && inst.getValue().single() instanceof Value.IntPart p ? p.value() : null;
+                default -> {}
+            }
+        }
+        if (literal == null)
+            return;
+        //count the iterations the same way the loop would
+        int iterations = 0;
+        for (int i = literal; test(i, bound); i += step) {
+            if (++iterations > UNROLL_ITERATIONS)
+                return;
+        }
+        start = literal;
+        this.iterations = iterations;
+        unrolled = new Instruction[iterations * body.length];
+        for (int i = 0; i < iterations; i++)
+            System.arraycopy(body, 0, unrolled, i * body.length, body.length);
+    }
+
+    /**
+     * Takes the loop body again after it was fused (see Fusion), it does the same as before
+     * @param body The loop body without the step instruction
+     */
+    public void setBody(List<Instruction> body) {
+        this.body = body.toArray(new Instruction[0]);
+        if (unrolled == null)
+            return;
+        unrolled = new Instruction[iterations * this.body.length];
+        for (int i = 0; i < iterations; i++)
+            System.arraycopy(this.body, 0, unrolled, i * this.body.length, this.body.length);
+    }
+
+    /**
+     * Runs the loop if its counter and bound are ints
+     * @param context The state of the running program
+     * @param event The loop event to end, null if loop events are disabled
+     * @return false if the loop has to run normally, nothing was executed then
+     */
+    public boolean run(ExecutionContext context, Events.Loop event) {
+        //the profiler measures the condition and step as well, so they have to run
+        if (context.isProfiled())
+            return false;
+        VariableManager variables = context.getVariables();
+        Variable counter = variables.get(depth, slot);
+        if (counter.getType() != Value.Type.INT)
+            return false;
+        int bound = this.bound;
+        if (boundSlot != -1) {
+            Variable b = variables.get(boundDepth, boundSlot);
+            if (b.getType() != Value.Type.INT)
+                return false;
+            bound = b.getInt();
+        }
+
+        int i = counter.getInt();
+        long iterations = 0;
+        try {
+            //the head always sets the counter to the same literal before an unrolled loop
+            if (unrolled != null && i == start) {
+                for (Instruction inst : unrolled)
+                    context.execute(inst);
+                iterations = this.iterations;
+                i += this.iterations * step;
+                return true;
+            }
+            while (test(i, bound)) {
+                if (readsCounter)
+                    counter.setInt(i);
+                if (scope != null)
+                    variables.pushScope(scope);
+                for (Instruction inst : body)
+                    context.execute(inst);
+                if (scope != null)
+                    variables.popScope(scope);
+                i += step;
+                iterations++;
+            }
+            return true;
+        } finally {
+            counter.setInt(i);
+            if (event != null)
+                event.end(iterations);
+        }
+    }
+
+    /**
+     * Compares the counter with the bound
+     */
+    private boolean test(int i, int bound) {
+        return switch (op) {
+            case EQUAL -> i == bound;
+            case NEQUAL -> i != bound;
+            case LESS -> i < bound;
+            case LEQUAL -> i <= bound;
+            case GREATER -> i > bound;
+            case GREQUAL -> i >= bound;
+            case NONE -> false;
+        };
+    }
+
+    /**
+     * The variables read and written by a list of instructions, including the ones in their code bodies
+     */
+    private static class Usage {
+        private final List<Resolver.Slot> reads = new ArrayList<>();
+        private final List<Resolver.Slot> writes = new ArrayList<>();
+
+        private boolean reads(int depth, int slot) {
+            return reads.contains(new Resolver.Slot(depth, slot));
+        }
+
+        private boolean writes(int depth, int slot) {
+            return writes.contains(new Resolver.Slot(depth, slot));
+        }
+
+        private void instructions(List<Instruction> instructions) {
+            for (Instruction i : instructions) {
+                switch (i) {
+                    case VarInitInstruction inst -> {
+                        value(inst.getValue());
+                        writes.add(new Resolver.Slot(inst.getDepth(), inst.getSlot()));
+                    }
+                    case VarModifyInstruction inst -> {
+                        if (inst.getValue() != null)
+                            value(inst.getValue());
+                        if (!inst.isReassign())
+                            reads.add(new Resolver.Slot(inst.getDepth(), inst.getSlot()));
+                        writes.add(new Resolver.Slot(inst.getDepth(), inst.getSlot()));
+                    }
+                    case PrintInstruction inst -> value(inst.getValue());
+                    case IfInstruction inst -> {
+                        condition(inst.getCondition());
+                        instructions(inst.getIfInstructions());
+                        if (inst.hasElse())
+                            instructions(inst.getElseInstructions());
+                    }
+                    case WhileInstruction inst -> {
+                        condition(inst.getCondition());
+                        instructions(inst.getInstructions());
+                    }
+                    case ForInstruction inst -> {
+                        instructions(inst.getTopStart());
+                        condition(inst.getTopCondition());
+                        instructions(inst.getTopLoop());
+                        instructions(inst.getLoop());
+                    }
+                    default -> {}
+                }
+            }
+        }
+
+        private void condition(Condition condition) {
+            if (condition.isChain()) {
+                for (Couple<Condition.ChainOperator, Condition> c : condition.getChain())
+                    condition(c.second());
+                return;
+            }
+            value(condition.getFirst());
+            value(condition.getSecond());
+        }
+
+        private void value(Value value) {
+            for (Value.ValuePart part : value.getParts())
+                if (part instanceof Value.VarPart v)
+                    reads.add(new Resolver.Slot(v.depth(), v.slot()));
+        }
+    }
+}
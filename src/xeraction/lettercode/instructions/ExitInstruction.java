@@ -1,27 +1,68 @@
 package xeraction.lettercode.instructions;
 
+import xeraction.lettercode.ExecutionContext;
 import xeraction.lettercode.Lettercode;
-import xeraction.lettercode.util.StringIterator;
+import xeraction.lettercode.util.ProgramReader;
+import xeraction.lettercode.util.ProgramWriter;
+import xeraction.lettercode.util.Resolver;
+import xeraction.lettercode.util.TokenIterator;
+
+import java.io.Serial;
 
 /**
  * Represents the "exit" instruction<br>
  * Program exits
  */
 public class ExitInstruction implements Instruction {
+    /**
+     * The position of the instruction in the source code
+     */
+    private int index = -1;
+
     public ExitInstruction() {}
 
     public char identifier() {
         return 'x';
     }
 
-    public Instruction parse(StringIterator iterator) {
+    public Instruction parse(TokenIterator iterator) {
         if (iterator.next() != 'l')
             Lettercode.error("Missing end statement after exit instruction", iterator);
         iterator.next();
         return new ExitInstruction();
     }
 
-    public void execute() {
-        System.exit(0);
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public void write(ProgramWriter writer) {}
+
+    public Instruction read(ProgramReader reader) {
+        return new ExitInstruction();
+    }
+
+    public void resolve(Resolver resolver) {}
+
+    public void execute(ExecutionContext context) {
+        throw Exit.INSTANCE;
+    }
+
+    /**
+     * Thrown to unwind the running program back to where it was started
+     */
+    public static class Exit extends RuntimeException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private static final Exit INSTANCE = new Exit();
+
+        private Exit() {
+            super(null, null, false, false);
+        }
     }
 }
@@ -1,8 +1,13 @@
 package xeraction.lettercode.instructions;
 
+import xeraction.lettercode.Events;
+import xeraction.lettercode.ExecutionContext;
 import xeraction.lettercode.Lettercode;
 import xeraction.lettercode.util.Condition;
-import xeraction.lettercode.util.StringIterator;
+import xeraction.lettercode.util.ProgramReader;
+import xeraction.lettercode.util.ProgramWriter;
+import xeraction.lettercode.util.Resolver;
+import xeraction.lettercode.util.TokenIterator;
 import xeraction.lettercode.util.VariableManager;
 
 import java.util.ArrayList;
@@ -13,6 +18,11 @@ import java.util.List;
  * Executes a block of code while a condition is true, with options for start variables and their modification
  */
 public class ForInstruction implements Instruction {
+    /**
+     * The position of the instruction in the source code
+     */
+    private int index = -1;
+
     /**
      * The first part of the loop head<br>
      * Variable initializations or modifications
@@ -36,11 +46,21 @@ public class ForInstruction implements Instruction {
      */
     private List<Instruction> loop;
 
+    /**
+     * The scopes of the loop head and the loop body, null if they don't initialize variables (set by the resolver)
+     */
+    private Resolver.Scope headScope, loopScope;
+
+    /**
+     * The loop as a counted loop, null if it isn't one (set by the resolver)
+     */
+    private CountedLoop counted;
+
     public char identifier() {
         return 'f';
     }
 
-    public Instruction parse(StringIterator iterator) {
+    public Instruction parse(TokenIterator iterator) {
         iterator.next();
         ForInstruction inst = new ForInstruction();
 
@@ -76,25 +96,104 @@ public class ForInstruction implements Instruction {
         return inst;
     }
 
-    public void execute() {
+    public List<Instruction> getTopStart() {
+        return topStart;
+    }
+
+    public Condition getTopCondition() {
+        return topCondition;
+    }
+
+    public List<Instruction> getTopLoop() {
+        return topLoop;
+    }
+
+    public List<Instruction> getLoop() {
+        return loop;
+    }
+
+    /**
+     * @return The loop as a counted loop, null if it isn't one (set by the resolver)
+     */
+    public CountedLoop getCounted() {
+        return counted;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public void write(ProgramWriter writer) {
+        writer.instructions(topStart);
+        topCondition.write(writer);
+        writer.instructions(topLoop);
+        writer.instructions(loop);
+    }
+
+    public Instruction read(ProgramReader reader) {
+        ForInstruction inst = new ForInstruction();
+        inst.topStart = reader.instructions();
+        inst.topCondition = new Condition();
+        inst.topCondition.read(reader);
+        inst.topLoop = reader.instructions();
+        inst.loop = reader.instructions();
+        return inst;
+    }
+
+    public void resolve(Resolver resolver) {
+        //mirror the scopes used during execution: loop head scope and inner loop scope
+        resolver.pushScope();
+        for (Instruction i : topStart)
+            i.resolve(resolver);
+        topCondition.resolve(resolver);
+        resolver.pushScope();
+        for (Instruction i : loop)
+            i.resolve(resolver);
+        for (Instruction i : topLoop)
+            i.resolve(resolver);
+        loopScope = resolver.popScope();
+        headScope = resolver.popScope();
+        counted = CountedLoop.of(topStart, topCondition, topLoop, loop, loopScope);
+    }
+
+    public void execute(ExecutionContext context) {
+        VariableManager variables = context.getVariables();
         //define extra scope for loop head
-        VariableManager.pushScope();
+        if (headScope != null)
+            variables.pushScope(headScope);
         //execute the first part of the loop head
         for (Instruction i : topStart)
-            i.execute();
-
-        while (topCondition.evaluate()) {
-            //inner loop scope so condition can't use variables defined in the body
-            VariableManager.pushScope();
-            //execute instructions in loop body
-            for (Instruction i : loop)
-                i.execute();
-            //execute instructions in third part of loop head
-            for (Instruction i : topLoop)
-                i.execute();
-            VariableManager.popScope();
+            context.execute(i);
+
+        Events.Loop event = Events.Loop.start("for", index);
+        if (counted == null || !counted.run(context, event)) {
+            long iterations = 0;
+            try {
+                while (context.evaluate(topCondition)) {
+                    //inner loop scope so condition can't use variables defined in the body
+                    if (loopScope != null)
+                        variables.pushScope(loopScope);
+                    //execute instructions in loop body
+                    for (Instruction i : loop)
+                        context.execute(i);
+                    //execute instructions in third part of loop head
+                    for (Instruction i : topLoop)
+                        context.execute(i);
+                    if (loopScope != null)
+                        variables.popScope(loopScope);
+                    iterations++;
+                }
+            } finally {
+                if (event != null)
+                    event.end(iterations);
+            }
         }
         //make sure variable from loop head can't be used anymore
-        VariableManager.popScope();
+        if (headScope != null)
+            variables.popScope(headScope);
     }
 }
@@ -0,0 +1,52 @@
+package xeraction.lettercode.instructions;
+
+import xeraction.lettercode.Lettercode;
+import xeraction.lettercode.util.ProgramReader;
+import xeraction.lettercode.util.ProgramWriter;
+import xeraction.lettercode.util.Resolver;
+import xeraction.lettercode.util.TokenIterator;
+
+import java.util.List;
+
+/**
+ * Implemented by every fused instruction (see Fusion)<br>
+ * A fused instruction does what the instructions it replaces do, in one go. It is only made for the interpreter,
+ * after the program is resolved and optimized, so it is never parsed, written, read or resolved.
+ * Everything else running a program (the register machine and the compiler) uses the instructions it replaces.
+ */
+public interface FusedInstruction extends Instruction {
+    /**
+     * @return The instructions this instruction replaces, in order
+     */
+    List<Instruction> unfused();
+
+    default char identifier() {
+        return unfused().getFirst().identifier();
+    }
+
+    default Instruction parse(TokenIterator iterator) {
+        Lettercode.error("Fused instructions can't be parsed! Probably not your fault...", iterator);
+        return null;
+    }
+
+    default int getIndex() {
+        return unfused().getFirst().getIndex();
+    }
+
+    default void setIndex(int index) {
+        unfused().getFirst().setIndex(index);
+    }
+
+    default void write(ProgramWriter writer) {
+        Lettercode.error("Fused instructions can't be written! Probably not your fault...");
+    }
+
+    default Instruction read(ProgramReader reader) {
+        Lettercode.error("Fused instructions can't be read! Probably not your fault...");
+        return null;
+    }
+
+    default void resolve(Resolver resolver) {
+        Lettercode.error("Fused instructions can't be resolved! Probably not your fault...");
+    }
+}
@@ -1,8 +1,12 @@
 package xeraction.lettercode.instructions;
 
+import xeraction.lettercode.ExecutionContext;
 import xeraction.lettercode.Lettercode;
 import xeraction.lettercode.util.Condition;
-import xeraction.lettercode.util.StringIterator;
+import xeraction.lettercode.util.ProgramReader;
+import xeraction.lettercode.util.ProgramWriter;
+import xeraction.lettercode.util.Resolver;
+import xeraction.lettercode.util.TokenIterator;
 import xeraction.lettercode.util.VariableManager;
 
 import java.util.List;
@@ -13,6 +17,11 @@ import java.util.List;
  * Executes an optional code block otherwise
  */
 public class IfInstruction implements Instruction {
+    /**
+     * The position of the instruction in the source code
+     */
+    private int index = -1;
+
     /**
      * The condition to check
      */
@@ -33,13 +42,18 @@ public class IfInstruction implements Instruction {
      */
     private List<Instruction> elseInstructions;
 
+    /**
+     * The scopes of the code bodies, null if they don't initialize variables (set by the resolver)
+     */
+    private Resolver.Scope ifScope, elseScope;
+
     public IfInstruction() {}
 
     public char identifier() {
         return 'j';
     }
 
-    public Instruction parse(StringIterator iterator) {
+    public Instruction parse(TokenIterator iterator) {
         iterator.next();
         //parse the condition
         Condition condition = new Condition();
@@ -69,17 +83,72 @@ public class IfInstruction implements Instruction {
         return inst;
     }
 
-    public void execute() {
-        if (condition.evaluate()) {
-            VariableManager.pushScope();
+    public Condition getCondition() {
+        return condition;
+    }
+
+    public List<Instruction> getIfInstructions() {
+        return ifInstructions;
+    }
+
+    public boolean hasElse() {
+        return hasElse;
+    }
+
+    public List<Instruction> getElseInstructions() {
+        return elseInstructions;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public void write(ProgramWriter writer) {
+        condition.write(writer);
+        writer.instructions(ifInstructions);
+        writer.writeBoolean(hasElse);
+        if (hasElse)
+            writer.instructions(elseInstructions);
+    }
+
+    public Instruction read(ProgramReader reader) {
+        IfInstruction inst = new IfInstruction();
+        inst.condition = new Condition();
+        inst.condition.read(reader);
+        inst.ifInstructions = reader.instructions();
+        inst.hasElse = reader.readBoolean();
+        if (inst.hasElse)
+            inst.elseInstructions = reader.instructions();
+        return inst;
+    }
+
+    public void resolve(Resolver resolver) {
+        condition.resolve(resolver);
+        ifScope = resolver.resolveBody(ifInstructions);
+        if (hasElse)
+            elseScope = resolver.resolveBody(elseInstructions);
+    }
+
+    public void execute(ExecutionContext context) {
+        VariableManager variables = context.getVariables();
+        if (context.evaluate(condition)) {
+            if (ifScope != null)
+                variables.pushScope(ifScope);
             for (Instruction i : ifInstructions)
-                i.execute();
-            VariableManager.popScope();
+                context.execute(i);
+            if (ifScope != null)
+                variables.popScope(ifScope);
         } else if (hasElse) {
-            VariableManager.pushScope();
+            if (elseScope != null)
+                variables.pushScope(elseScope);
             for (Instruction i : elseInstructions)
-                i.execute();
-            VariableManager.popScope();
+                context.execute(i);
+            if (elseScope != null)
+                variables.popScope(elseScope);
         }
     }
 }
@@ -1,6 +1,10 @@
 package xeraction.lettercode.instructions;
 
-import xeraction.lettercode.util.StringIterator;
+import xeraction.lettercode.ExecutionContext;
+import xeraction.lettercode.util.ProgramReader;
+import xeraction.lettercode.util.ProgramWriter;
+import xeraction.lettercode.util.Resolver;
+import xeraction.lettercode.util.TokenIterator;
 
 /**
  * Implemented by every instruction<br>
@@ -17,10 +21,41 @@ public interface Instruction {
      * @param iterator The iterator with its position at the identifier
      * @return A new, parsed instance of the instruction
      */
-    Instruction parse(StringIterator iterator);
+    Instruction parse(TokenIterator iterator);
+
+    /**
+     * @return The position of the instruction in the source code (where its identifier or variable name starts), -1 if unknown
+     */
+    int getIndex();
+
+    /**
+     * Stamps the instruction with its position in the source code, done by the parser
+     * @param index The position
+     */
+    void setIndex(int index);
+
+    /**
+     * Writes the parsed instruction in the binary program format
+     * @param writer The writer
+     */
+    void write(ProgramWriter writer);
+
+    /**
+     * Reads the instruction from the binary program format
+     * @param reader The reader with its position after the identifier
+     * @return A new, read instance of the instruction
+     */
+    Instruction read(ProgramReader reader);
+
+    /**
+     * Binds the variables used by the instruction to their slots
+     * @param resolver The resolver with the scopes at the position of the instruction
+     */
+    void resolve(Resolver resolver);
 
     /**
      * Execute the instruction
+     * @param context The state of the running program
      */
-    void execute();
+    void execute(ExecutionContext context);
 }
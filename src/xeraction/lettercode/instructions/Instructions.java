@@ -1,25 +1,26 @@
 package xeraction.lettercode.instructions;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * Utility class providing easy access to all instructions<br>
  * Using during parsing
  */
 public class Instructions {
     /**
-     * Every instruction (with an identifier)
+     * Every instruction (with an identifier), indexed by its identifier
      */
-    private static final List<Instruction> instructions = new ArrayList<>();
+    private static final Instruction[] instructions = new Instruction[128];
 
     static {
-        instructions.add(new VarInitInstruction());
-        instructions.add(new ExitInstruction());
-        instructions.add(new PrintInstruction());
-        instructions.add(new IfInstruction());
-        instructions.add(new WhileInstruction());
-        instructions.add(new ForInstruction());
+        add(new VarInitInstruction());
+        add(new ExitInstruction());
+        add(new PrintInstruction());
+        add(new IfInstruction());
+        add(new WhileInstruction());
+        add(new ForInstruction());
+    }
+
+    private static void add(Instruction instruction) {
+        instructions[instruction.identifier()] = instruction;
     }
 
     /**
@@ -28,9 +29,6 @@ public class Instructions {
      * @return The instruction corresponding to the identifier
      */
     public static Instruction get(char identifier) {
-        for (Instruction i : instructions)
-            if (i.identifier() == identifier)
-                return i;
-        return null;
+        return identifier < instructions.length ? instructions[identifier] : null;
     }
 }
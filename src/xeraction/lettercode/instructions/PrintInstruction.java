@@ -1,14 +1,23 @@
 package xeraction.lettercode.instructions;
 
+import xeraction.lettercode.ExecutionContext;
 import xeraction.lettercode.Lettercode;
-import xeraction.lettercode.util.StringIterator;
+import xeraction.lettercode.util.ProgramReader;
+import xeraction.lettercode.util.ProgramWriter;
+import xeraction.lettercode.util.Resolver;
+import xeraction.lettercode.util.TokenIterator;
 import xeraction.lettercode.util.Value;
 
 /**
  * Represents the "print" instruction<br>
- * Prints a value to the console
+ * Prints a value to the output sink
  */
 public class PrintInstruction implements Instruction {
+    /**
+     * The position of the instruction in the source code
+     */
+    private int index = -1;
+
     /**
      * The value to print
      */
@@ -20,7 +29,7 @@ public class PrintInstruction implements Instruction {
         return 'h';
     }
 
-    public Instruction parse(StringIterator iterator) {
+    public Instruction parse(TokenIterator iterator) {
         iterator.next();
         //parse the value
         Value value = new Value();
@@ -34,8 +43,34 @@ public class PrintInstruction implements Instruction {
         return inst;
     }
 
-    public void execute() {
-        Value v = value.evaluate();
-        System.out.println(v.toStringValue());
+    public Value getValue() {
+        return value;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public void write(ProgramWriter writer) {
+        value.write(writer);
+    }
+
+    public Instruction read(ProgramReader reader) {
+        PrintInstruction inst = new PrintInstruction();
+        inst.value = new Value();
+        inst.value.read(reader);
+        return inst;
+    }
+
+    public void resolve(Resolver resolver) {
+        value.resolve(resolver);
+    }
+
+    public void execute(ExecutionContext context) {
+        value.evaluate(context).print(context.getOutput());
     }
 }
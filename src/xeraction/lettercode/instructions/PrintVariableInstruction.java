@@ -0,0 +1,55 @@
+package xeraction.lettercode.instructions;
+
+import xeraction.lettercode.ExecutionContext;
+import xeraction.lettercode.util.OutputSink;
+import xeraction.lettercode.util.Value;
+import xeraction.lettercode.util.Variable;
+
+import java.util.List;
+
+/**
+ * A print of a single variable, e.g. hAl<br>
+ * Ints and doubles are printed straight from the variable, without evaluating a value
+ */
+public class PrintVariableInstruction implements FusedInstruction {
+    /**
+     * The print instruction this instruction replaces
+     */
+    private final PrintInstruction print;
+
+    /*
+    The printed variable
+     */
+    private final int depth;
+    private final int slot;
+
+    private PrintVariableInstruction(PrintInstruction print, Value.VarPart var) {
+        this.print = print;
+        depth = var.depth();
+        slot = var.slot();
+    }
+
+    /**
+     * @param instructions A resolved print instruction
+     * @return The fused instruction, null if the print doesn't print a single variable
+     */
+    public static Instruction of(List<Instruction> instructions) {
+        if (instructions.getFirst() instanceof PrintInstruction inst && inst.getValue().single() instanceof Value.VarPart var)
+            return new PrintVariableInstruction(inst, var);
+        return null;
+    }
+
+    public List<Instruction> unfused() {
+        return List.of(print);
+    }
+
+    public void execute(ExecutionContext context) {
+        Variable var = context.getVariables().get(depth, slot);
+        OutputSink output = context.getOutput();
+        switch (var.getType()) {
+            case INT -> output.println(var.getInt());
+            case DOUBLE -> output.println(var.getDouble());
+            default -> print.execute(context);
+        }
+    }
+}
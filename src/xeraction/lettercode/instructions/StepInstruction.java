@@ -0,0 +1,115 @@
+package xeraction.lettercode.instructions;
+
+import xeraction.lettercode.ExecutionContext;
+import xeraction.lettercode.util.Value;
+import xeraction.lettercode.util.Variable;
+import xeraction.lettercode.util.VariableManager;
+
+import java.util.List;
+
+/**
+ * A variable combined with an int literal or another variable in place, e.g. App, Anei3il or AeApBl<br>
+ * Int and double variables are changed without evaluating a value. If the variable or the other variable
+ * isn't a number while running, the modification runs as written.
+ */
+public class StepInstruction implements FusedInstruction {
+    /**
+     * The modification this instruction replaces
+     */
+    private final VarModifyInstruction modify;
+
+    /*
+    The changed variable
+     */
+    private final int depth;
+    private final int slot;
+
+    /**
+     * The operator the variable is combined with
+     */
+    private final Value.Operator op;
+
+    /**
+     * The operand: an int literal, or a variable if operandSlot isn't -1
+     */
+    private final int operand;
+    private final int operandDepth;
+    private final int operandSlot;
+
+    private StepInstruction(VarModifyInstruction modify, Value.Operator op, Value.ValuePart operand) {
+        this.modify = modify;
+        depth = modify.getDepth();
+        slot = modify.getSlot();
+        this.op = op;
+        if (operand instanceof Value.VarPart v) {
+            this.operand = 0;
+            operandDepth = v.depth();
+            operandSlot = v.slot();
+        } else {
+            this.operand = ((Value.IntPart)operand).value();
+            operandDepth = -1;
+            operandSlot = -1;
+        }
+    }
+
+    /**
+     * @param instructions A resolved variable modification
+     * @return The fused instruction, null if the modification doesn't combine the variable with an int literal or another variable
+     */
+    public static Instruction of(List<Instruction> instructions) {
+        if (!(instructions.getFirst() instanceof VarModifyInstruction inst))
+            return null;
+        if (inst.isPlusPlus() || inst.isMinusMinus())
+            return new StepInstruction(inst, inst.isPlusPlus() ? Value.Operator.PLUS : Value.Operator.MINUS, Value.ONE.single());
+        List<Value.ValuePart> parts = inst.getValue().getParts();
+        if (!inst.isReassign())
+            return isOperand(inst.getValue().single()) ? new StepInstruction(inst, inst.getOperator(), parts.getFirst()) : null;
+        //a reassignment to the variable itself combined with an operand works the same way
+        if (parts.size() == 2 && parts.getFirst() instanceof Value.VarPart v && v.operator() == Value.Operator.NONE
+                && v.depth() == inst.getDepth() && v.slot() == inst.getSlot() && isOperand(parts.get(1)))
+            return new StepInstruction(inst, parts.get(1).operator(), parts.get(1));
+        return null;
+    }
+
+    private static boolean isOperand(Value.ValuePart part) {
+        return part instanceof Value.IntPart || part instanceof Value.VarPart;
+    }
+
+    public List<Instruction> unfused() {
+        return List.of(modify);
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public void execute(ExecutionContext context) {
+        step(context);
+    }
+
+    /**
+     * Changes the variable
+     * @param context The state of the running program
+     * @return The changed variable
+     */
+    Variable step(ExecutionContext context) {
+        VariableManager variables = context.getVariables();
+        Variable var = variables.get(depth, slot);
+        int operand = this.operand;
+        if (operandSlot != -1) {
+            Variable o = variables.get(operandDepth, operandSlot);
+            if (o.getType() != Value.Type.INT) {
+                modify.execute(context);
+                return var;
+            }
+            operand = o.getInt();
+        }
+        if (!var.modify(op, operand))
+            modify.execute(context);
+        return var;
+    }
+}
@@ -0,0 +1,149 @@
+package xeraction.lettercode.instructions;
+
+import xeraction.lettercode.Events;
+import xeraction.lettercode.ExecutionContext;
+import xeraction.lettercode.LettercodeException;
+import xeraction.lettercode.util.Condition;
+import xeraction.lettercode.util.Resolver;
+import xeraction.lettercode.util.Value;
+import xeraction.lettercode.util.Variable;
+import xeraction.lettercode.util.VariableManager;
+
+import java.util.List;
+
+/**
+ * A while loop whose body ends with a step of the variable its condition compares with an int literal or another variable,
+ * e.g. rIlti43it...jIeti7itIpei3ilzIppz<br>
+ * Loops like this that aren't counted loops (because the body changes the counter or bound as well) step the counter
+ * and test it at the end of every iteration in one go, without evaluating the condition.
+ * If the counter or bound isn't an int, the condition is evaluated as usual.
+ */
+public class StepLoopInstruction implements FusedInstruction {
+    /**
+     * The while loop this instruction replaces
+     */
+    private final WhileInstruction loop;
+
+    /**
+     * The loop body without the step
+     */
+    private final Instruction[] body;
+
+    /**
+     * The step of the counter
+     */
+    private final StepInstruction step;
+
+    /**
+     * The comparison of the counter with the bound
+     */
+    private final Condition.CondOperator op;
+
+    /**
+     * The bound: a constant, or a variable if boundSlot isn't -1
+     */
+    private final int bound;
+    private final int boundDepth;
+    private final int boundSlot;
+
+    private StepLoopInstruction(WhileInstruction loop, StepInstruction step, Value.ValuePart bound) {
+        this.loop = loop;
+        List<Instruction> instructions = loop.getInstructions();
+        body = instructions.subList(0, instructions.size() - 1).toArray(new Instruction[0]);
+        this.step = step;
+        op = loop.getCondition().getOperator();
+        if (bound instanceof Value.VarPart v) {
+            this.bound = 0;
+            boundDepth = v.depth();
+            boundSlot = v.slot();
+        } else {
+            this.bound = ((Value.IntPart)bound).value();
+            boundDepth = -1;
+            boundSlot = -1;
+        }
+    }
+
+    /**
+     * @param instructions A resolved while loop with its body already fused
+     * @return The fused instruction, null if the loop is a counted loop or doesn't end with a step of the variable its condition compares
+     */
+    public static Instruction of(List<Instruction> instructions) {
+        if (!(instructions.getFirst() instanceof WhileInstruction inst) || inst.getCounted() != null || inst.getInstructions().isEmpty())
+            return null;
+        Condition condition = inst.getCondition();
+        if (condition.isChain() || condition.getOperator() == Condition.CondOperator.NONE)
+            return null;
+        if (!(condition.getFirst().single() instanceof Value.VarPart counter) || !(inst.getInstructions().getLast() instanceof StepInstruction step))
+            return null;
+        if (step.getDepth() != counter.depth() || step.getSlot() != counter.slot())
+            return null;
+        Value.ValuePart bound = condition.getSecond().single();
+        if (!(bound instanceof Value.IntPart) && !(bound instanceof Value.VarPart))
+            return null;
+        return new StepLoopInstruction(inst, step, bound);
+    }
+
+    public List<Instruction> unfused() {
+        return List.of(loop);
+    }
+
+    public void execute(ExecutionContext context) {
+        //the profiler measures the condition and step on their own, so they have to run as written
+        if (context.isProfiled()) {
+            loop.execute(context);
+            return;
+        }
+        VariableManager variables = context.getVariables();
+        Resolver.Scope scope = loop.getScope();
+        Events.Loop event = Events.Loop.start("while", loop.getIndex());
+        long iterations = 0;
+        try {
+            boolean running = context.evaluate(loop.getCondition());
+            while (running) {
+                if (scope != null)
+                    variables.pushScope(scope);
+                for (Instruction i : body)
+                    context.execute(i);
+                Variable counter;
+                try {
+                    counter = step.step(context);
+                } catch (LettercodeException e) {
+                    //the step doesn't run through the context, which adds the position of the failing instruction
+                    throw e.at(step.getIndex());
+                }
+                if (scope != null)
+                    variables.popScope(scope);
+                iterations++;
+                running = next(context, counter);
+            }
+        } finally {
+            if (event != null)
+                event.end(iterations);
+        }
+    }
+
+    /**
+     * Tests the stepped counter against the bound, the same way the condition would
+     */
+    private boolean next(ExecutionContext context, Variable counter) {
+        if (counter.getType() != Value.Type.INT)
+            return context.evaluate(loop.getCondition());
+        int bound = this.bound;
+        if (boundSlot != -1) {
+            Variable b = context.getVariables().get(boundDepth, boundSlot);
+            if (b.getType() != Value.Type.INT)
+                return context.evaluate(loop.getCondition());
+            bound = b.getInt();
+        }
+        int i = counter.getInt();
+        return switch (op) {
+            case EQUAL -> i == bound;
+            case NEQUAL -> i != bound;
+            case LESS -> i < bound;
+            case LEQUAL -> i <= bound;
+            case GREATER -> i > bound;
+            case GREQUAL -> i >= bound;
+            case NONE -> false;
+        };
+    }
+}
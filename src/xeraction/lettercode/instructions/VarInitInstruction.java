@@ -1,16 +1,23 @@
 package xeraction.lettercode.instructions;
 
+import xeraction.lettercode.ExecutionContext;
 import xeraction.lettercode.Lettercode;
-import xeraction.lettercode.util.StringIterator;
+import xeraction.lettercode.util.ProgramReader;
+import xeraction.lettercode.util.ProgramWriter;
+import xeraction.lettercode.util.Resolver;
+import xeraction.lettercode.util.TokenIterator;
 import xeraction.lettercode.util.Value;
-import xeraction.lettercode.util.Variable;
-import xeraction.lettercode.util.VariableManager;
 
 /**
  * Represents the variable initialization instruction<br>
  * Initializes a variable with the specified name and value on the top scope
  */
 public class VarInitInstruction implements Instruction {
+    /**
+     * The position of the instruction in the source code
+     */
+    private int index = -1;
+
     /**
      * The variable name
      */
@@ -21,13 +28,37 @@ public class VarInitInstruction implements Instruction {
      */
     private Value value;
 
+    /**
+     * The depth of the scope the variable is initialized in (set by the resolver)
+     */
+    private int depth;
+
+    /**
+     * The slot of the variable (set by the resolver)
+     */
+    private int slot;
+
     public VarInitInstruction() {}
 
+    /**
+     * Creates the initialization of a variable that isn't in the source code (used by the optimizer)
+     * @param name The variable name
+     * @param value The value
+     * @return The instruction, at the position of the value
+     */
+    public static VarInitInstruction of(String name, Value value) {
+        VarInitInstruction inst = new VarInitInstruction();
+        inst.name = name;
+        inst.value = value;
+        inst.index = value.getIndex();
+        return inst;
+    }
+
     public char identifier() {
         return 'v';
     }
 
-    public Instruction parse(StringIterator iterator) {
+    public Instruction parse(TokenIterator iterator) {
         //parse the name
         if (!Character.isUpperCase(iterator.next()))
             Lettercode.error("Expected variable name", iterator);
@@ -50,10 +81,51 @@ public class VarInitInstruction implements Instruction {
         return inst;
     }
 
-    public void execute() {
-        Value val = value.evaluate();
-        Variable v = new Variable(name);
-        v.setValue(val);
-        VariableManager.add(v);
+    public String getName() {
+        return name;
+    }
+
+    public Value getValue() {
+        return value;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public void write(ProgramWriter writer) {
+        writer.writeString(name);
+        value.write(writer);
+    }
+
+    public Instruction read(ProgramReader reader) {
+        VarInitInstruction inst = new VarInitInstruction();
+        inst.name = reader.readString();
+        inst.value = new Value();
+        inst.value.read(reader);
+        return inst;
+    }
+
+    public void resolve(Resolver resolver) {
+        //resolve the value first, it can't use the variable it initializes
+        value.resolve(resolver);
+        depth = resolver.depth();
+        slot = resolver.declare(name);
+    }
+
+    public void execute(ExecutionContext context) {
+        context.getVariables().add(depth, slot, value.evaluate(context));
     }
 }
@@ -1,21 +1,39 @@
 package xeraction.lettercode.instructions;
 
+import xeraction.lettercode.ExecutionContext;
 import xeraction.lettercode.Lettercode;
-import xeraction.lettercode.util.StringIterator;
+import xeraction.lettercode.util.ProgramReader;
+import xeraction.lettercode.util.ProgramWriter;
+import xeraction.lettercode.util.Resolver;
+import xeraction.lettercode.util.TokenIterator;
 import xeraction.lettercode.util.Value;
 import xeraction.lettercode.util.Variable;
-import xeraction.lettercode.util.VariableManager;
 
 /**
  * Represents the variable modification instruction<br>
  * Modify an existing variable with a value
  */
 public class VarModifyInstruction implements Instruction {
+    /**
+     * The position of the instruction in the source code
+     */
+    private int index = -1;
+
     /**
      * The name of the variable to modify
      */
     private String name;
 
+    /**
+     * The depth of the scope the variable to modify lives in (set by the resolver)
+     */
+    private int depth;
+
+    /**
+     * The slot of the variable to modify (set by the resolver)
+     */
+    private int slot;
+
     /**
      * The operator to use on the modification value
      */
@@ -41,13 +59,18 @@ public class VarModifyInstruction implements Instruction {
      */
     private boolean minusminus = false;
 
+    /**
+     * What the variable is set to: the variable followed by the modification value, or the value itself when reassigning (set by the resolver)
+     */
+    private Value modification;
+
     public VarModifyInstruction() {}
 
     public char identifier() {
         return ' '; //doesn't use the conventional system because it starts with a variable name which can be any uppercase letter
     }
 
-    public Instruction parse(StringIterator iterator) {
+    public Instruction parse(TokenIterator iterator) {
         //parse the variable name
         name = iterator.getVarName();
         //parse the operator
@@ -91,20 +114,109 @@ public class VarModifyInstruction implements Instruction {
         return this;
     }
 
-    public void execute() {
-        Variable var = VariableManager.get(name);
-        if (var == null)
-            Lettercode.error("Unknown variable: " + name);
+    public String getName() {
+        return name;
+    }
+
+    public Value.Operator getOperator() {
+        return op;
+    }
+
+    /**
+     * @return The modification value, null for pp and mm
+     */
+    public Value getValue() {
+        return value;
+    }
+
+    /**
+     * @return The value the variable is set to, the variable combined with the modification value (set by the resolver)
+     */
+    public Value getModification() {
+        return modification;
+    }
 
+    public boolean isReassign() {
+        return reassign;
+    }
+
+    public boolean isPlusPlus() {
+        return plusplus;
+    }
+
+    public boolean isMinusMinus() {
+        return minusminus;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public void write(ProgramWriter writer) {
+        writer.writeString(name);
+        writer.writeByte(op.ordinal());
+        writer.writeBoolean(reassign);
+        writer.writeBoolean(plusplus);
+        writer.writeBoolean(minusminus);
+        if (value != null)
+            value.write(writer);
+    }
+
+    public Instruction read(ProgramReader reader) {
+        VarModifyInstruction inst = new VarModifyInstruction();
+        inst.name = reader.readString();
+        inst.op = Value.Operator.values()[reader.readByte()];
+        inst.reassign = reader.readBoolean();
+        inst.plusplus = reader.readBoolean();
+        inst.minusminus = reader.readBoolean();
+        //there's no value with pp or mm
+        if (!inst.plusplus && !inst.minusminus) {
+            inst.value = new Value();
+            inst.value.read(reader);
+        }
+        return inst;
+    }
+
+    public void resolve(Resolver resolver) {
+        if (value != null)
+            value.resolve(resolver);
+        Resolver.Slot s = resolver.lookup(name, index);
+        depth = s.depth();
+        slot = s.index();
         if (reassign) {
-            Value v = value.evaluate();
-            var.setValue(v);
-        } else if (plusplus) {
-            var.getValue().modify(Value.Operator.PLUS, Value.ONE.clone());
-        } else if (minusminus) {
-            var.getValue().modify(Value.Operator.MINUS, Value.ONE.clone());
+            modification = value;
         } else {
-            var.getValue().modify(op, value);
+            Value.Operator operator = plusplus ? Value.Operator.PLUS : minusminus ? Value.Operator.MINUS : op;
+            modification = Value.modification(new Value.VarPart(Value.Operator.NONE, name, depth, slot), operator, value == null ? Value.ONE : value);
         }
     }
+
+    public void execute(ExecutionContext context) {
+        Variable var = context.getVariables().get(depth, slot);
+
+        //pp and mm update int and double variables in place
+        if ((plusplus || minusminus) && var.modify(plusplus ? Value.Operator.PLUS : Value.Operator.MINUS, 1))
+            return;
+
+        //ints and doubles are evaluated as primitives, so no value is created for them
+        Value.Type type = modification.specializedType(context);
+        if (type == Value.Type.INT)
+            var.setInt(modification.evaluateInt(context));
+        else if (type == Value.Type.DOUBLE)
+            var.setDouble(modification.evaluateDouble(context));
+        else
+            var.setValue(modification.evaluate(context));
+    }
 }
@@ -1,8 +1,13 @@
 package xeraction.lettercode.instructions;
 
+import xeraction.lettercode.Events;
+import xeraction.lettercode.ExecutionContext;
 import xeraction.lettercode.Lettercode;
 import xeraction.lettercode.util.Condition;
-import xeraction.lettercode.util.StringIterator;
+import xeraction.lettercode.util.ProgramReader;
+import xeraction.lettercode.util.ProgramWriter;
+import xeraction.lettercode.util.Resolver;
+import xeraction.lettercode.util.TokenIterator;
 import xeraction.lettercode.util.VariableManager;
 
 import java.util.List;
@@ -12,6 +17,11 @@ import java.util.List;
  * Execute a block of code while a condition is true
  */
 public class WhileInstruction implements Instruction {
+    /**
+     * The position of the instruction in the source code
+     */
+    private int index = -1;
+
     /**
      * The condition to check
      */
@@ -22,13 +32,23 @@ public class WhileInstruction implements Instruction {
      */
     private List<Instruction> instructions;
 
+    /**
+     * The scope of the code body, null if it doesn't initialize variables (set by the resolver)
+     */
+    private Resolver.Scope scope;
+
+    /**
+     * The loop as a counted loop, null if it isn't one (set by the resolver)
+     */
+    private CountedLoop counted;
+
     public WhileInstruction() {}
 
     public char identifier() {
         return 'r';
     }
 
-    public Instruction parse(StringIterator iterator) {
+    public Instruction parse(TokenIterator iterator) {
         iterator.next();
 
         //parse the condition
@@ -47,12 +67,74 @@ public class WhileInstruction implements Instruction {
         return inst;
     }
 
-    public void execute() {
-        while (condition.evaluate()) {
-            VariableManager.pushScope();
-            for (Instruction i : instructions)
-                i.execute();
-            VariableManager.popScope();
+    public Condition getCondition() {
+        return condition;
+    }
+
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * @return The scope of the code body, null if it doesn't initialize variables (set by the resolver)
+     */
+    public Resolver.Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * @return The loop as a counted loop, null if it isn't one (set by the resolver)
+     */
+    public CountedLoop getCounted() {
+        return counted;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public void write(ProgramWriter writer) {
+        condition.write(writer);
+        writer.instructions(instructions);
+    }
+
+    public Instruction read(ProgramReader reader) {
+        WhileInstruction inst = new WhileInstruction();
+        inst.condition = new Condition();
+        inst.condition.read(reader);
+        inst.instructions = reader.instructions();
+        return inst;
+    }
+
+    public void resolve(Resolver resolver) {
+        condition.resolve(resolver);
+        scope = resolver.resolveBody(instructions);
+        counted = CountedLoop.of(condition, instructions, scope);
+    }
+
+    public void execute(ExecutionContext context) {
+        VariableManager variables = context.getVariables();
+        Events.Loop event = Events.Loop.start("while", index);
+        if (counted != null && counted.run(context, event))
+            return;
+        long iterations = 0;
+        try {
+            while (context.evaluate(condition)) {
+                if (scope != null)
+                    variables.pushScope(scope);
+                for (Instruction i : instructions)
+                    context.execute(i);
+                if (scope != null)
+                    variables.popScope(scope);
+                iterations++;
+            }
+        } finally {
+            if (event != null)
+                event.end(iterations);
         }
     }
 }
@@ -0,0 +1,50 @@
+package xeraction.lettercode.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Source code that only contains ASCII characters, read straight from a byte buffer (usually a mapped file)<br>
+ * Nothing is copied onto the heap until a part of it is turned into a string
+ */
+public class AsciiSource implements CharSequence {
+    /**
+     * The characters of the source code, one byte each
+     */
+    private final ByteBuffer bytes;
+
+    /**
+     * @param bytes The characters of the source code, from its position to its limit (all of them have to be ASCII)
+     */
+    public AsciiSource(ByteBuffer bytes) {
+        this.bytes = bytes.slice();
+    }
+
+    public int length() {
+        return bytes.limit();
+    }
+
+    public char charAt(int index) {
+        return (char)bytes.get(index);
+    }
+
+    /**
+     * Copies a part of the source code into a string
+     */
+    public String subSequence(int start, int end) {
+        byte[] part = new byte[end - start];
+        bytes.get(start, part);
+        return new String(part, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return The characters of the source code (which are also their UTF-8 encoding), as a new buffer
+     */
+    public ByteBuffer bytes() {
+        return bytes.duplicate();
+    }
+
+    public String toString() {
+        return subSequence(0, length());
+    }
+}
@@ -0,0 +1,196 @@
+package xeraction.lettercode.util;
+
+import xeraction.lettercode.Lettercode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An output sink collecting everything in a large byte buffer<br>
+ * Numbers, characters and booleans are formatted straight into the buffer, the buffer is written to its channel when full or flushed
+ */
+public class BufferedOutput implements OutputSink, AutoCloseable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'}, FALSE = {'f', 'a', 'l', 's', 'e'};
+
+    /**
+     * The channel the buffer is written to
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * The charset used for non-ASCII characters
+     */
+    private final Charset charset;
+
+    private final byte[] newline;
+
+    private final byte[] buf = new byte[BUFFER_SIZE];
+    private final ByteBuffer buffer = ByteBuffer.wrap(buf);
+
+    /**
+     * The current position in the buffer
+     */
+    private int pos = 0;
+
+    /**
+     * Reused for formatting doubles
+     */
+    private final StringBuilder scratch = new StringBuilder(32);
+
+    public BufferedOutput(WritableByteChannel channel, Charset charset) {
+        this.channel = channel;
+        this.charset = charset;
+        newline = System.lineSeparator().getBytes(charset);
+    }
+
+    /**
+     * @return An output sink writing to the standard output
+     */
+    public static BufferedOutput stdout() {
+        return new BufferedOutput(Channels.newChannel(System.out), System.out.charset());
+    }
+
+    /**
+     * @param stream The stream to write to
+     * @return An output sink writing to the stream in UTF-8
+     */
+    public static BufferedOutput of(OutputStream stream) {
+        return new BufferedOutput(Channels.newChannel(stream), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param path The file to write to, replacing its content
+     * @return An output sink writing to the file in UTF-8
+     */
+    public static BufferedOutput file(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        return new BufferedOutput(channel, StandardCharsets.UTF_8);
+    }
+
+    public void println(int value) {
+        ensure(12);
+        //work with the negative value so Integer.MIN_VALUE doesn't overflow
+        if (value < 0)
+            buf[pos++] = '-';
+        else
+            value = -value;
+        int start = pos;
+        do {
+            buf[pos++] = (byte)('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+        //the digits were written in reverse
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte b = buf[i];
+            buf[i] = buf[j];
+            buf[j] = b;
+        }
+        newline();
+    }
+
+    public void println(double value) {
+        scratch.setLength(0);
+        scratch.append(value);
+        ensure(scratch.length());
+        for (int i = 0; i < scratch.length(); i++)
+            buf[pos++] = (byte)scratch.charAt(i);
+        newline();
+    }
+
+    public void println(char value) {
+        if (value < 0x80) {
+            ensure(1);
+            buf[pos++] = (byte)value;
+        } else {
+            write(String.valueOf(value).getBytes(charset));
+        }
+        newline();
+    }
+
+    public void println(boolean value) {
+        write(value ? TRUE : FALSE);
+        newline();
+    }
+
+    public void println(String value) {
+        int length = value.length();
+        int i = 0;
+        //copy ASCII characters directly
+        while (i < length) {
+            if (pos == buf.length)
+                flush();
+            char c = value.charAt(i);
+            if (c >= 0x80)
+                break;
+            buf[pos++] = (byte)c;
+            i++;
+        }
+        if (i < length)
+            write(value.substring(i).getBytes(charset));
+        newline();
+    }
+
+    public void flush() {
+        buffer.clear().limit(pos);
+        try {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        } catch (IOException e) {
+            pos = 0;
+            Lettercode.error("Couldn't write output.", e);
+        }
+        pos = 0;
+    }
+
+    /**
+     * Flushes the buffer and closes the channel
+     */
+    public void close() {
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            Lettercode.error("Couldn't write output.", e);
+        }
+    }
+
+    private void newline() {
+        write(newline);
+    }
+
+    private void write(byte[] bytes) {
+        if (bytes.length > buf.length) {
+            flush();
+            try {
+                ByteBuffer b = ByteBuffer.wrap(bytes);
+                while (b.hasRemaining())
+                    channel.write(b);
+            } catch (IOException e) {
+                Lettercode.error("Couldn't write output.", e);
+            }
+            return;
+        }
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    /**
+     * Makes sure there is enough space left in the buffer, flushing it if there isn't
+     * @param bytes The number of bytes needed
+     */
+    private void ensure(int bytes) {
+        if (pos + bytes > buf.length)
+            flush();
+    }
+}
@@ -1,6 +1,8 @@
 package xeraction.lettercode.util;
 
+import xeraction.lettercode.ExecutionContext;
 import xeraction.lettercode.Lettercode;
+import xeraction.lettercode.LettercodeException;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -9,7 +11,9 @@ import java.util.List;
  * Represents a condition inside if/while statements<br>
  * Has two 'modes': simple and chain<br>
  * -Simple: Comparison between two values<br>
- * -Chain: Number of simple condition connected with logical operators (and, or, etc.)
+ * -Chain: Number of simple condition connected with logical operators (and, or, etc.)<br>
+ * Chains are combined from left to right without precedence. They are turned into a tree of logical nodes when parsed,
+ * so "a" and "o" skip the following part condition once the result is decided.
  */
 
 public class Condition {
@@ -31,13 +35,35 @@ public class Condition {
      */
     private List<Couple<ChainOperator, Condition>> chain;
 
+    /**
+     * The logical tree of the chain (only in chain mode)
+     */
+    private Test tree;
+
+    /*
+    The values of a simple condition if they are a single literal or variable (set by the resolver), compared by their types directly
+     */
+    private Value.ValuePart firstPart;
+    private Value.ValuePart secondPart;
+
+    /**
+     * The type specialization of a simple condition, picked on the first evaluation
+     */
+    private Value.Specialization specialization = Value.Specialization.UNINITIALIZED;
+
+    /**
+     * The position of the condition in the source code, -1 if unknown
+     */
+    private int index = -1;
+
     public Condition() {}
 
     /**
      * Parse the condition
-     * @param iterator The iterator with its position at the first character of the condition
+     * @param iterator The iterator with its position at the first token of the condition
      */
-    public void parse(StringIterator iterator) {
+    public void parse(TokenIterator iterator) {
+        index = iterator.getIndex();
         //parse the first condition (don't know if it's a chain yet)
         Condition c = parsePartCondition(iterator);
         while (true) {
@@ -62,8 +88,10 @@ public class Condition {
             Condition cond = parsePartCondition(iterator);
             chain.add(new Couple<>(op, cond));
         }
-        if (isChain)
+        if (isChain) {
+            tree = tree(chain);
             return;
+        }
         first = c.first;
         op = c.op;
         second = c.second;
@@ -71,11 +99,12 @@ public class Condition {
 
     /**
      * Parse a simple condition (part condition in chains)
-     * @param iterator The iterator with its position at the first character of the part condition
+     * @param iterator The iterator with its position at the first token of the part condition
      * @return A simple condition
      */
-    private Condition parsePartCondition(StringIterator iterator) {
+    private Condition parsePartCondition(TokenIterator iterator) {
         Condition cond = new Condition();
+        cond.index = iterator.getIndex();
         //parse the first comparison value
         cond.first = new Value();
         cond.first.parse(iterator);
@@ -125,64 +154,336 @@ public class Condition {
      * Shortcut for throwing an error when parsing of a conditional operator failed
      * @param it The iterator with its position at the error
      */
-    private void noOp(StringIterator it) {
+    private void noOp(TokenIterator it) {
         Lettercode.error("Unknown conditional operator", it);
     }
 
+    /**
+     * Writes the parsed condition in the binary program format
+     * @param writer The writer
+     */
+    public void write(ProgramWriter writer) {
+        writer.writeIndex(index);
+        writer.writeBoolean(isChain);
+        if (!isChain) {
+            first.write(writer);
+            writer.writeByte(op.ordinal());
+            second.write(writer);
+            return;
+        }
+        writer.writeInt(chain.size());
+        for (Couple<ChainOperator, Condition> c : chain) {
+            writer.writeByte(c.first().ordinal());
+            c.second().write(writer);
+        }
+    }
+
+    /**
+     * Reads the condition from the binary program format
+     * @param reader The reader with its position at the condition
+     */
+    public void read(ProgramReader reader) {
+        index = reader.readIndex();
+        isChain = reader.readBoolean();
+        if (!isChain) {
+            first = new Value();
+            first.read(reader);
+            op = CondOperator.values()[reader.readByte()];
+            second = new Value();
+            second.read(reader);
+            return;
+        }
+        int size = reader.readInt();
+        chain = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            ChainOperator op = ChainOperator.values()[reader.readByte()];
+            Condition c = new Condition();
+            c.read(reader);
+            chain.add(new Couple<>(op, c));
+        }
+        tree = tree(chain);
+    }
+
+    /**
+     * Builds the logical tree of a chain, every operator combines the result so far with the next part condition
+     * @param chain The condition chain
+     * @return The root of the tree
+     */
+    private static Test tree(List<Couple<ChainOperator, Condition>> chain) {
+        Test top = new Comparison(chain.getFirst().second());
+        for (int i = 1; i < chain.size(); i++) {
+            Test next = new Comparison(chain.get(i).second());
+            top = switch (chain.get(i).first()) {
+                case AND -> new And(top, next);
+                case OR -> new Or(top, next);
+                default -> new Xor(top, next);
+            };
+        }
+        return top;
+    }
+
+    /**
+     * Binds the variables used by this condition to their slots
+     * @param resolver The resolver with the scopes at the position of this condition
+     */
+    public void resolve(Resolver resolver) {
+        if (!isChain) {
+            first.resolve(resolver);
+            second.resolve(resolver);
+            firstPart = first.single();
+            secondPart = second.single();
+            return;
+        }
+        for (Couple<ChainOperator, Condition> c : chain)
+            c.second().resolve(resolver);
+    }
+
+    /**
+     * Sets the specialization of a simple condition before running (see TypeInference)
+     * @param specialization The specialization, UNINITIALIZED to leave it to the first evaluation
+     */
+    void specialize(Value.Specialization specialization) {
+        this.specialization = specialization;
+    }
+
     /**
      * Evaluates the condition<br>
      * Note that this does not change the actual condition meaning it can be evaluated over and over again
+     * @param context The state of the running program
      * @return Whether the condition evaluated to true or false
      */
-    public boolean evaluate() {
-        if (!isChain) {
-            Value first = this.first.evaluate();
-            Value second = this.second.evaluate();
-            //make sure the compared types are compatible (can compare everything except string and other types)
-            if (first.getType() != second.getType()) {
-                if ((first.getType() == Value.Type.STRING && second.getType() != Value.Type.STRING)
-                        || (first.getType() != Value.Type.STRING && second.getType() == Value.Type.STRING))
-                    Lettercode.error("Cannot compare these variable types: " + first.getType().name() + " and " + second.getType().name());
+    public boolean evaluate(ExecutionContext context) {
+        return isChain ? tree.test(context) : compare(context);
+    }
+
+    /**
+     * Decides the condition without running the program if it only compares single literals (see Optimizer)<br>
+     * A chain is decided as soon as its result is, the part conditions after that would be skipped while running anyway
+     * @return The result, null if it depends on variables or user input or the comparison fails
+     */
+    public Boolean constant() {
+        if (isChain)
+            return constant(tree);
+        Value.ValuePart a = first.single(), b = second.single();
+        if (!isLiteral(a) || !isLiteral(b))
+            return null;
+        //strings can't be compared with other types, leave the error for the program to run into
+        if ((a.type() == Value.Type.STRING) != (b.type() == Value.Type.STRING))
+            return null;
+        firstPart = a;
+        secondPart = b;
+        try {
+            return compare(null);
+        } catch (LettercodeException e) {
+            return null;
+        }
+    }
+
+    private static boolean isLiteral(Value.ValuePart part) {
+        return part != null && (isNumber(part.type()) || part.type() == Value.Type.STRING);
+    }
+
+    private static Boolean constant(Test test) {
+        return switch (test) {
+            case Comparison c -> c.condition.constant();
+            case And and -> {
+                Boolean left = constant(and.left);
+                yield left == null ? null : left ? constant(and.right) : Boolean.FALSE;
+            }
+            case Or or -> {
+                Boolean left = constant(or.left);
+                yield left == null ? null : left ? Boolean.TRUE : constant(or.right);
             }
-            //do the comparisons
-            switch (first.getType()) {
-                case INT, DOUBLE, CHAR, BOOLEAN -> {
-                    double val1 = getDoubleVal(first);
-                    double val2 = getDoubleVal(second);
-                    return switch (op) {
-                        case EQUAL -> val1 == val2;
-                        case NEQUAL -> val1 != val2;
-                        case LESS -> val1 < val2;
-                        case LEQUAL -> val1 <= val2;
-                        case GREATER -> val1 > val2;
-                        case GREQUAL -> val1 >= val2;
-                        case NONE -> false;
-                    };
-                }
-                case STRING -> {
-                    String val1 = first.toStringValue();
-                    String val2 = first.toStringValue();
-                    //string values only allow checking for equality
-                    switch (op) {
-                        case EQUAL -> {return val1.equals(val2);}
-                        case NEQUAL -> {return !val1.equals(val2);}
-                        default -> Lettercode.error("You can only compare two strings for equality!");
-                    }
-                }
+            case Xor xor -> {
+                Boolean left = constant(xor.left), right = constant(xor.right);
+                yield left == null || right == null ? null : left ^ right;
             }
-            return false;
+        };
+    }
+
+    /**
+     * Evaluates a simple condition
+     * @param context The state of the running program
+     * @return The result of the comparison
+     */
+    private boolean compare(ExecutionContext context) {
+        if (firstPart != null && secondPart != null) {
+            Value.Type type1 = Value.typeOf(firstPart, context);
+            Value.Type type2 = Value.typeOf(secondPart, context);
+            if (type1 == Value.Type.INT && type2 == Value.Type.INT)
+                return compare(Value.intOf(firstPart, context), Value.intOf(secondPart, context));
+            if (type1 == Value.Type.CHAR && type2 == Value.Type.CHAR)
+                return compare(charOf(firstPart, context), charOf(secondPart, context));
+            if (type1 == Value.Type.STRING && type2 == Value.Type.STRING)
+                return compareStrings(stringOf(firstPart, context), stringOf(secondPart, context));
+            if (isNumber(type1) && isNumber(type2))
+                return compare(doubleOf(firstPart, type1, context), doubleOf(secondPart, type2, context));
+            //mixed up strings and user input go the generic way
         }
-        //condition is a chain - evaluate and chain them together with their operator
-        boolean top = chain.getFirst().second().evaluate();
-        for (int i = 1; i < chain.size(); i++) {
-            boolean next = chain.get(i).second().evaluate();
-            switch (chain.get(i).first()) {
-                case AND -> top = top && next;
-                case OR -> top = top || next;
-                case XOR -> top = top ^ next;
+        //compare the primitives directly while both values are still specialized
+        if (specialization == Value.Specialization.INT || specialization == Value.Specialization.DOUBLE) {
+            Value.Type type1 = this.first.specializedType(context);
+            Value.Type type2 = this.second.specializedType(context);
+            if (type1 != null && type2 != null) {
+                if (specialization == Value.Specialization.INT)
+                    return compare(this.first.evaluateInt(context), this.second.evaluateInt(context));
+                return compare(getDoubleVal(this.first, type1, context), getDoubleVal(this.second, type2, context));
             }
+            specialization = Value.Specialization.GENERIC;
         }
-        return top;
+        Value first = this.first.evaluate(context);
+        Value second = this.second.evaluate(context);
+        //make sure the compared types are compatible (can compare everything except string and other types)
+        if (first.getType() != second.getType()) {
+            if ((first.getType() == Value.Type.STRING && second.getType() != Value.Type.STRING)
+                    || (first.getType() != Value.Type.STRING && second.getType() == Value.Type.STRING))
+                Lettercode.error("Cannot compare these variable types: " + first.getType().name() + " and " + second.getType().name());
+        }
+        //specialize on the first evaluation if both values could be specialized
+        if (specialization == Value.Specialization.UNINITIALIZED) {
+            Value.Type type1 = this.first.specializedType(context);
+            Value.Type type2 = this.second.specializedType(context);
+            if (type1 == null || type2 == null)
+                specialization = Value.Specialization.GENERIC;
+            else if (type1 == Value.Type.INT && type2 == Value.Type.INT)
+                specialization = Value.Specialization.INT;
+            else
+                specialization = Value.Specialization.DOUBLE;
+        }
+        //do the comparisons
+        switch (first.getType()) {
+            case INT, DOUBLE, CHAR, BOOLEAN -> {
+                return compare(getDoubleVal(first), getDoubleVal(second));
+            }
+            case STRING -> {
+                return compareStrings(first.toStringValue(), second.toStringValue());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares two strings with the operator of this condition
+     * @param val1 The first string
+     * @param val2 The second string
+     * @return The result of the comparison
+     */
+    private boolean compareStrings(String val1, String val2) {
+        //string values only allow checking for equality
+        switch (op) {
+            case EQUAL -> {return val1.equals(val2);}
+            case NEQUAL -> {return !val1.equals(val2);}
+            default -> Lettercode.error("You can only compare two strings for equality!");
+        }
+        return false;
+    }
+
+    /*
+    Read the content of single literals and variables, variables are read without evaluating their value
+     */
+    private static boolean isNumber(Value.Type type) {
+        return type == Value.Type.INT || type == Value.Type.DOUBLE || type == Value.Type.CHAR || type == Value.Type.BOOLEAN;
+    }
+
+    private static char charOf(Value.ValuePart part, ExecutionContext context) {
+        if (part instanceof Value.VarPart v)
+            return context.getVariables().get(v.depth(), v.slot()).getValue().getAsChar();
+        return ((Value.CharPart)part).value();
+    }
+
+    private static String stringOf(Value.ValuePart part, ExecutionContext context) {
+        if (part instanceof Value.VarPart v)
+            return context.getVariables().get(v.depth(), v.slot()).getValue().toStringValue();
+        return ((Value.StringPart)part).value();
+    }
+
+    private static double doubleOf(Value.ValuePart part, Value.Type type, ExecutionContext context) {
+        return switch (type) {
+            case INT, DOUBLE -> Value.doubleOf(part, context);
+            case CHAR -> charOf(part, context);
+            default -> {
+                if (part instanceof Value.VarPart v)
+                    yield context.getVariables().get(v.depth(), v.slot()).getValue().getAsBool() ? 1 : 0;
+                yield ((Value.BoolPart)part).value() ? 1 : 0;
+            }
+        };
+    }
+
+    /**
+     * @return The position of the condition in the source code, -1 if unknown
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public boolean isChain() {
+        return isChain;
+    }
+
+    public Value getFirst() {
+        return first;
+    }
+
+    public CondOperator getOperator() {
+        return op;
+    }
+
+    public Value getSecond() {
+        return second;
+    }
+
+    /**
+     * @return The condition chain with the operator preceding each part condition (only in chain mode)
+     */
+    public List<Couple<ChainOperator, Condition>> getChain() {
+        return chain;
+    }
+
+    /**
+     * Compares two numbers with the operator of this condition
+     * @param val1 The first number
+     * @param val2 The second number
+     * @return The result of the comparison
+     */
+    private boolean compare(double val1, double val2) {
+        return switch (op) {
+            case EQUAL -> val1 == val2;
+            case NEQUAL -> val1 != val2;
+            case LESS -> val1 < val2;
+            case LEQUAL -> val1 <= val2;
+            case GREATER -> val1 > val2;
+            case GREQUAL -> val1 >= val2;
+            case NONE -> false;
+        };
+    }
+
+    /**
+     * Compares two ints with the operator of this condition
+     * @param val1 The first int
+     * @param val2 The second int
+     * @return The result of the comparison
+     */
+    private boolean compare(int val1, int val2) {
+        return switch (op) {
+            case EQUAL -> val1 == val2;
+            case NEQUAL -> val1 != val2;
+            case LESS -> val1 < val2;
+            case LEQUAL -> val1 <= val2;
+            case GREATER -> val1 > val2;
+            case GREQUAL -> val1 >= val2;
+            case NONE -> false;
+        };
+    }
+
+    /**
+     * Evaluates a specialized value as a double
+     * @param value The value
+     * @param type The type the value is specialized to (int or double)
+     * @param context The state of the running program
+     * @return The value as a double
+     */
+    private double getDoubleVal(Value value, Value.Type type, ExecutionContext context) {
+        return type == Value.Type.INT ? value.evaluateInt(context) : value.evaluateDouble(context);
     }
 
     /**
@@ -200,17 +501,48 @@ public class Condition {
         return (int)value.getAsChar();
     }
 
+    /**
+     * A node of the logical tree of a chain
+     */
+    private sealed interface Test {
+        boolean test(ExecutionContext context);
+    }
+
+    private record Comparison(Condition condition) implements Test {
+        public boolean test(ExecutionContext context) {
+            return condition.compare(context);
+        }
+    }
+
+    private record And(Test left, Test right) implements Test {
+        public boolean test(ExecutionContext context) {
+            return left.test(context) && right.test(context);
+        }
+    }
+
+    private record Or(Test left, Test right) implements Test {
+        public boolean test(ExecutionContext context) {
+            return left.test(context) || right.test(context);
+        }
+    }
+
+    private record Xor(Test left, Test right) implements Test {
+        public boolean test(ExecutionContext context) {
+            return left.test(context) ^ right.test(context);
+        }
+    }
+
     /**
      * The conditional operators
      */
-    private enum CondOperator {
+    public enum CondOperator {
         EQUAL, NEQUAL, GREATER, GREQUAL, LESS, LEQUAL, NONE
     }
 
     /**
      * The chain operators (logical operators)
      */
-    private enum ChainOperator {
+    public enum ChainOperator {
         AND, OR, XOR, NONE
     }
 }
@@ -0,0 +1,55 @@
+package xeraction.lettercode.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An input provider reading all inputs from a file up front, one input per line
+ */
+public class FileInput extends ListInput {
+    /**
+     * @param path The UTF-8 input file
+     */
+    public FileInput(Path path) throws IOException {
+        super(lines(read(path)));
+    }
+
+    private static String read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Input file too large");
+            ByteBuffer buffer = ByteBuffer.allocate((int)size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0);
+            buffer.flip();
+            return StandardCharsets.UTF_8.decode(buffer).toString();
+        }
+    }
+
+    /**
+     * Splits a text into lines the same way BufferedReader.readLine does
+     */
+    private static List<String> lines(String text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                lines.add(text.substring(start, i));
+                if (c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n')
+                    i++;
+                start = i + 1;
+            }
+        }
+        //the last line doesn't need a line break
+        if (start < text.length())
+            lines.add(text.substring(start));
+        return lines;
+    }
+}
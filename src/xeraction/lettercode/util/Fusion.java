@@ -0,0 +1,118 @@
+package xeraction.lettercode.util;
+
+import xeraction.lettercode.instructions.CountedLoop;
+import xeraction.lettercode.instructions.ForInstruction;
+import xeraction.lettercode.instructions.IfInstruction;
+import xeraction.lettercode.instructions.Instruction;
+import xeraction.lettercode.instructions.PrintVariableInstruction;
+import xeraction.lettercode.instructions.StepInstruction;
+import xeraction.lettercode.instructions.StepLoopInstruction;
+import xeraction.lettercode.instructions.WhileInstruction;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Replaces common sequences of instructions in a resolved program by fused instructions (see FusedInstruction) for the interpreter<br>
+ * The fusions are listed in FUSIONS and tried in that order at every position of every code body, nested code bodies
+ * are fused first. A new fusion only needs a fused instruction class and a line in FUSIONS.<br>
+ * The code bodies are changed in place, so this is the last thing done to a program.
+ */
+public class Fusion {
+    /**
+     * A fusion
+     * @param name The name of the fusion in the report
+     * @param length The number of instructions it replaces
+     * @param fuse Makes the fused instruction from that many instructions of a code body, returns null if they don't match
+     */
+    public record Rule(String name, int length, Function<List<Instruction>, Instruction> fuse) {}
+
+    /**
+     * The fusions, in the order they are tried
+     */
+    public static final List<Rule> FUSIONS = List.of(
+            new Rule("print variable", 1, PrintVariableInstruction::of),
+            new Rule("step", 1, StepInstruction::of),
+            //after step, since it needs the step at the end of the loop body fused
+            new Rule("step and test loop", 1, StepLoopInstruction::of)
+    );
+
+    /**
+     * How often each fusion was made
+     */
+    private final Map<String, Integer> fused = new LinkedHashMap<>();
+
+    private Fusion() {
+        for (Rule rule : FUSIONS)
+            fused.put(rule.name(), 0);
+    }
+
+    /**
+     * Fuses all code bodies of a program
+     * @param instructions The resolved instructions of the program, changed in place
+     * @return The fusion with its report
+     */
+    public static Fusion fuseProgram(List<Instruction> instructions) {
+        Fusion fusion = new Fusion();
+        fusion.body(instructions);
+        return fusion;
+    }
+
+    /**
+     * Fuses a code body and the code bodies in it
+     * @param instructions The instructions of the code body, changed in place
+     */
+    private void body(List<Instruction> instructions) {
+        for (Instruction inst : instructions) {
+            switch (inst) {
+                case IfInstruction i -> {
+                    body(i.getIfInstructions());
+                    if (i.hasElse())
+                        body(i.getElseInstructions());
+                }
+                case WhileInstruction i -> {
+                    body(i.getInstructions());
+                    //the counted loop runs a copy of the body without the step
+                    CountedLoop counted = i.getCounted();
+                    if (counted != null)
+                        counted.setBody(i.getInstructions().subList(0, i.getInstructions().size() - 1));
+                }
+                case ForInstruction i -> {
+                    body(i.getTopStart());
+                    body(i.getTopLoop());
+                    body(i.getLoop());
+                    if (i.getCounted() != null)
+                        i.getCounted().setBody(i.getLoop());
+                }
+                default -> {}
+            }
+        }
+        for (int i = 0; i < instructions.size(); i++) {
+            for (Rule rule : FUSIONS) {
+                if (i + rule.length() > instructions.size())
+                    continue;
+                List<Instruction> window = instructions.subList(i, i + rule.length());
+                Instruction fused = rule.fuse().apply(window);
+                if (fused == null)
+                    continue;
+                window.clear();
+                instructions.add(i, fused);
+                this.fused.merge(rule.name(), 1, Integer::sum);
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return What was fused, one line per fusion
+     */
+    public List<String> getReport() {
+        List<String> report = new ArrayList<>();
+        report.add("Fusion: made " + fused.values().stream().mapToInt(Integer::intValue).sum() + " fused instructions");
+        fused.forEach((name, count) -> report.add("  " + name + ": " + count));
+        return report;
+    }
+}
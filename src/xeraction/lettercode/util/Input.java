@@ -0,0 +1,150 @@
+package xeraction.lettercode.util;
+
+import xeraction.lettercode.Lettercode;
+
+/**
+ * Utility class for requesting user input and converting it into typed value parts
+ */
+public class Input {
+    /**
+     * Requests the next input from a provider
+     * @param provider The input provider
+     * @param output The output of the program, flushed before asking
+     * @return The input value part with its corresponding type
+     */
+    public static Value.ValuePart next(InputProvider provider, OutputSink output) {
+        //show everything printed so far before asking
+        output.flush();
+        Value.ValuePart part = provider.next();
+        if (part == null)
+            Lettercode.error("The program asked for input, but there is none left.");
+        return part;
+    }
+
+    /**
+     * Converts one line of input into a value part, checking all possible types in order from most to least specific
+     * @param in The input
+     * @return The value part with its corresponding type, unknown for empty input
+     */
+    public static Value.ValuePart parse(String in) {
+        if (in.isEmpty())
+            return new Value.UnknownPart(Value.Operator.NONE);
+        if (isInt(in))
+            return new Value.IntPart(Value.Operator.NONE, Integer.parseInt(in));
+        if (isDouble(in))
+            return new Value.DoublePart(Value.Operator.NONE, Double.parseDouble(in));
+        if (in.length() == 1)
+            return new Value.CharPart(Value.Operator.NONE, in.charAt(0));
+        if (in.equals("true") || in.equals("false"))
+            return new Value.BoolPart(Value.Operator.NONE, in.equals("true"));
+        return new Value.StringPart(Value.Operator.NONE, in);
+    }
+
+    /**
+     * Checks whether Integer.parseInt accepts the input, without throwing an exception for every non-integer
+     */
+    static boolean isInt(String in) {
+        int i = 0, length = in.length();
+        boolean negative = false;
+        char first = in.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+            if (length == 1)
+                return false;
+        }
+        //accumulate negatively so Integer.MIN_VALUE fits
+        int result = 0;
+        for (; i < length; i++) {
+            int digit = Character.digit(in.charAt(i), 10);
+            if (digit < 0 || result < (Integer.MIN_VALUE + digit) / 10)
+                return false;
+            result = result * 10 - digit;
+        }
+        return negative || result != Integer.MIN_VALUE;
+    }
+
+    /**
+     * Checks whether Double.parseDouble accepts the input, without throwing an exception for every non-number
+     */
+    static boolean isDouble(String in) {
+        //leading and trailing whitespace is ignored
+        int start = 0, end = in.length();
+        while (start < end && in.charAt(start) <= ' ')
+            start++;
+        while (end > start && in.charAt(end - 1) <= ' ')
+            end--;
+        if (start < end && (in.charAt(start) == '-' || in.charAt(start) == '+'))
+            start++;
+        if (start == end)
+            return false;
+
+        if (in.startsWith("NaN", start))
+            return start + 3 == end;
+        if (in.startsWith("Infinity", start))
+            return start + 8 == end;
+
+        //an optional type suffix
+        char last = in.charAt(end - 1);
+        if (last == 'f' || last == 'F' || last == 'd' || last == 'D')
+            end--;
+
+        if (end - start > 2 && in.charAt(start) == '0' && (in.charAt(start + 1) == 'x' || in.charAt(start + 1) == 'X'))
+            return isHexDouble(in, start + 2, end);
+
+        //digits with an optional point, at least one digit in total
+        int i = start;
+        int digits = 0;
+        while (i < end && isDigit(in.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < end && in.charAt(i) == '.') {
+            i++;
+            while (i < end && isDigit(in.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0)
+            return false;
+        if (i < end && (in.charAt(i) == 'e' || in.charAt(i) == 'E'))
+            return isExponent(in, i + 1, end);
+        return i == end;
+    }
+
+    private static boolean isHexDouble(String in, int i, int end) {
+        int digits = 0;
+        while (i < end && Character.digit(in.charAt(i), 16) >= 0 && in.charAt(i) < 0x80) {
+            i++;
+            digits++;
+        }
+        if (i < end && in.charAt(i) == '.') {
+            i++;
+            while (i < end && Character.digit(in.charAt(i), 16) >= 0 && in.charAt(i) < 0x80) {
+                i++;
+                digits++;
+            }
+        }
+        //hexadecimal doubles always need a binary exponent
+        if (digits == 0 || i == end || (in.charAt(i) != 'p' && in.charAt(i) != 'P'))
+            return false;
+        return isExponent(in, i + 1, end);
+    }
+
+    private static boolean isExponent(String in, int i, int end) {
+        if (i < end && (in.charAt(i) == '-' || in.charAt(i) == '+'))
+            i++;
+        if (i == end)
+            return false;
+        for (; i < end; i++) {
+            if (!isDigit(in.charAt(i)))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
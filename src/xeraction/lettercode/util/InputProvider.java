@@ -0,0 +1,12 @@
+package xeraction.lettercode.util;
+
+/**
+ * Supplies the user input a program asks for<br>
+ * Every request takes one line of input, already converted into the appropriate type
+ */
+public interface InputProvider {
+    /**
+     * @return The next input as a value part without operator, null if there is no input left
+     */
+    Value.ValuePart next();
+}
@@ -0,0 +1,101 @@
+package xeraction.lettercode.util;
+
+import xeraction.lettercode.Lettercode;
+
+/**
+ * Splits source code into tokens in one pass over the characters<br>
+ * Every token is stored as three ints (kind, start, end) in an array, the text of names and literals stays in the source until the parser asks for it<br>
+ * The tokens are produced in chunks of a fixed size, so huge programs don't need a huge token array
+ */
+public class Lexer {
+    /*
+    The token kinds
+     */
+    /** A single character (instructions, operators, body delimiters, ...) */
+    public static final int LETTER = 0;
+    /** A variable name (uppercase letters and digits) */
+    public static final int NAME = 1;
+    /** A literal value including its surrounding characters */
+    public static final int LITERAL = 2;
+    /** The end of the source code, always the last token */
+    public static final int END = 3;
+
+    /**
+     * The ints used by every token
+     */
+    public static final int SIZE = 3;
+
+    /**
+     * The source code
+     */
+    private final CharSequence source;
+
+    /**
+     * The position in the source code where the next token starts
+     */
+    private int position = 0;
+
+    public Lexer(CharSequence source) {
+        this.source = source;
+    }
+
+    /**
+     * Splits the next part of the source code into tokens
+     * @param tokens The array to fill with tokens (from the start, room for at least one token)
+     * @return The number of tokens written, the last one is an END token once the end of the source code is reached
+     * @throws xeraction.lettercode.LettercodeException If the code contains a space or an unclosed literal
+     */
+    public int lex(int[] tokens) {
+        int length = source.length();
+        int size = 0;
+        int i = position;
+        while (size + SIZE <= tokens.length) {
+            if (i == length) {
+                tokens[size++] = END;
+                tokens[size++] = length;
+                tokens[size++] = length;
+                break;
+            }
+            char c = source.charAt(i);
+            int kind, start = i;
+            if (Character.isUpperCase(c) || Character.isDigit(c)) {
+                kind = NAME;
+                do {
+                    i++;
+                } while (i < length && (Character.isUpperCase(source.charAt(i)) || Character.isDigit(source.charAt(i))));
+            } else if (c == 'i' || c == 'd' || c == 's' || c == 'c' || c == 'b') {
+                kind = LITERAL;
+                i = closing(i) + 1;
+            } else {
+                if (c == ' ')
+                    Lettercode.error("The string contains a space! ABOOORRRRTTTTT");
+                kind = LETTER;
+                i++;
+            }
+            tokens[size++] = kind;
+            tokens[size++] = start;
+            tokens[size++] = i;
+        }
+        position = i;
+        return size / SIZE;
+    }
+
+    /**
+     * Finds the character closing a literal<br>
+     * A 'g' in front of the surrounding character escapes it, unless that 'g' is escaped itself
+     * @param open The position of the character opening the literal
+     * @return The position of the closing character
+     */
+    private int closing(int open) {
+        char c = source.charAt(open);
+        for (int p = open + 1; p < source.length(); p++) {
+            char current = source.charAt(p);
+            if (current == ' ')
+                Lettercode.error("The string contains a space! ABOOORRRRTTTTT");
+            if (current == c && (source.charAt(p - 1) != 'g' || source.charAt(p - 2) == 'g'))
+                return p;
+        }
+        Lettercode.error("Unclosed value", c, open);
+        return -1;
+    }
+}
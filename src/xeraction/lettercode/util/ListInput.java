@@ -0,0 +1,35 @@
+package xeraction.lettercode.util;
+
+import java.util.List;
+
+/**
+ * An input provider handing out a fixed list of inputs, converted up front
+ */
+public class ListInput implements InputProvider {
+    private final Value.ValuePart[] inputs;
+
+    /**
+     * The index of the next input
+     */
+    private int next = 0;
+
+    /**
+     * @param inputs The inputs in the order they are requested, one line each
+     */
+    public ListInput(List<String> inputs) {
+        this.inputs = new Value.ValuePart[inputs.size()];
+        for (int i = 0; i < this.inputs.length; i++)
+            this.inputs[i] = Input.parse(inputs.get(i));
+    }
+
+    public Value.ValuePart next() {
+        return next < inputs.length ? inputs[next++] : null;
+    }
+
+    /**
+     * Starts handing out the inputs from the beginning again
+     */
+    public void reset() {
+        next = 0;
+    }
+}
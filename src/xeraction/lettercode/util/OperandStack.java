@@ -0,0 +1,132 @@
+package xeraction.lettercode.util;
+
+import xeraction.lettercode.ExecutionContext;
+import xeraction.lettercode.Lettercode;
+
+/**
+ * The operand stack values are evaluated on (see Value.evaluate), one per execution so parallel executions never share it<br>
+ * Every slot holds its type and either a primitive (ints, characters and booleans as their int, doubles as their bits)
+ * or a string part, so values combining numbers allocate nothing while they are evaluated.
+ * Specialized values use the plain int and double stacks instead.
+ */
+public class OperandStack {
+    /*
+    The typed slots
+     */
+    private Value.Type[] types = new Value.Type[8];
+    private long[] prims = new long[8];
+    private Value.ValuePart[] refs = new Value.ValuePart[8];
+
+    /*
+    The stacks of specialized values
+     */
+    int[] ints = new int[8];
+    double[] doubles = new double[8];
+
+    public OperandStack() {}
+
+    /**
+     * Makes sure the stacks have room for a value
+     * @param size The most operands the value needs at once
+     */
+    void ensure(int size) {
+        if (size <= types.length)
+            return;
+        int length = Math.max(size, types.length * 2);
+        types = new Value.Type[length];
+        prims = new long[length];
+        refs = new Value.ValuePart[length];
+        ints = new int[length];
+        doubles = new double[length];
+    }
+
+    /**
+     * Puts a value part into a slot, resolving variables and user input
+     * @param slot The slot
+     * @param part The value part
+     * @param context The state of the running program
+     */
+    void load(int slot, Value.ValuePart part, ExecutionContext context) {
+        switch (part) {
+            case Value.VarPart v -> {
+                Variable var = context.getVariables().get(v.depth(), v.slot());
+                //ints and doubles are read without creating their value
+                switch (var.getType()) {
+                    case INT -> setInt(slot, Value.Type.INT, var.getInt());
+                    case DOUBLE -> setDouble(slot, var.getDouble());
+                    default -> {
+                        Value value = var.getValue();
+                        if (!value.hasEvaluated())
+                            Lettercode.error("Variable has not been evaluated yet? Probably not your fault...");
+                        set(slot, value.first());
+                    }
+                }
+            }
+            case Value.InputPart i -> set(slot, context.input());
+            default -> set(slot, part);
+        }
+    }
+
+    /**
+     * Combines two slots using the specified operator, following the rules of Value.combine
+     * @param a The base slot, receives the result
+     * @param b The modifier slot
+     * @param op The operator
+     */
+    void combine(int a, int b, Value.Operator op) {
+        Value.Type ta = types[a], tb = types[b];
+        boolean aInt = ta == Value.Type.INT || ta == Value.Type.BOOLEAN, bInt = tb == Value.Type.INT || tb == Value.Type.CHAR || tb == Value.Type.BOOLEAN;
+        //booleans only combine with ints and doubles, characters only with ints
+        if (ta == Value.Type.INT && bInt || ta == Value.Type.BOOLEAN && tb == Value.Type.INT)
+            setInt(a, Value.Type.INT, Value.arithmetic((int)prims[a], (int)prims[b], op));
+        else if (ta == Value.Type.CHAR && tb == Value.Type.INT)
+            setInt(a, Value.Type.CHAR, (char)Value.arithmetic((int)prims[a], (int)prims[b], op));
+        else if (aInt && tb == Value.Type.DOUBLE || ta == Value.Type.DOUBLE && (bInt || tb == Value.Type.DOUBLE))
+            setDouble(a, Value.arithmetic(getDouble(a), getDouble(b), op));
+        else
+            set(a, Value.combine(part(a), part(b), op));
+    }
+
+    /**
+     * @param slot The slot
+     * @return The content of the slot as a value part without an operator
+     */
+    Value.ValuePart part(int slot) {
+        return switch (types[slot]) {
+            case INT -> new Value.IntPart(Value.Operator.NONE, (int)prims[slot]);
+            case DOUBLE -> new Value.DoublePart(Value.Operator.NONE, Double.longBitsToDouble(prims[slot]));
+            case CHAR -> new Value.CharPart(Value.Operator.NONE, (char)prims[slot]);
+            case BOOLEAN -> new Value.BoolPart(Value.Operator.NONE, prims[slot] != 0);
+            default -> refs[slot];
+        };
+    }
+
+    private void set(int slot, Value.ValuePart part) {
+        switch (part) {
+            case Value.IntPart p -> setInt(slot, Value.Type.INT, p.value());
+            case Value.DoublePart p -> setDouble(slot, p.value());
+            case Value.CharPart p -> setInt(slot, Value.Type.CHAR, p.value());
+            case Value.BoolPart p -> setInt(slot, Value.Type.BOOLEAN, p.value() ? 1 : 0);
+            default -> {
+                types[slot] = part.type();
+                refs[slot] = part;
+            }
+        }
+    }
+
+    private void setInt(int slot, Value.Type type, int value) {
+        types[slot] = type;
+        prims[slot] = value;
+        refs[slot] = null;
+    }
+
+    private void setDouble(int slot, double value) {
+        types[slot] = Value.Type.DOUBLE;
+        prims[slot] = Double.doubleToRawLongBits(value);
+        refs[slot] = null;
+    }
+
+    private double getDouble(int slot) {
+        return types[slot] == Value.Type.DOUBLE ? Double.longBitsToDouble(prims[slot]) : prims[slot];
+    }
+}
@@ -0,0 +1,505 @@
+package xeraction.lettercode.util;
+
+import xeraction.lettercode.instructions.ExitInstruction;
+import xeraction.lettercode.instructions.ForInstruction;
+import xeraction.lettercode.instructions.IfInstruction;
+import xeraction.lettercode.instructions.Instruction;
+import xeraction.lettercode.instructions.PrintInstruction;
+import xeraction.lettercode.instructions.VarInitInstruction;
+import xeraction.lettercode.instructions.VarModifyInstruction;
+import xeraction.lettercode.instructions.WhileInstruction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Simplifies a resolved program before it is run, without changing what it does<br>
+ * The program is resolved first so unknown variables and type errors are reported for the code as written (see Lettercode.program)<br>
+ * -Folds the literals of values into single parts (see Value.fold)<br>
+ * -Replaces ifs with a constant condition by the body that is taken (or drops the body that isn't if the taken one initializes variables)<br>
+ * -Drops while loops and the bodies of for loops whose condition is constantly false<br>
+ * -Drops everything after an exit instruction in the same code body<br>
+ * -Hoists the subexpressions a loop condition starts with in front of the loop if nothing in the loop changes them,
+ * and reads them from there everywhere in the loop<br>
+ * -Computes a subexpression used again later in the same loop body once, as long as nothing changes it in between<br>
+ * Subexpressions go into new variables (named #1, #2, ... so they can't collide with the variables of the program).
+ * They are only computed ahead of time if they would be the first thing to be computed anyway, so errors still happen
+ * in the same order, and never contain user input, since reading it is a side effect.<br>
+ * The code bodies are changed in place, so scopes move and the program has to be resolved again afterwards.
+ */
+public class Optimizer {
+    /**
+     * What was changed, one line per change
+     */
+    private final List<String> changes = new ArrayList<>();
+
+    private int foldedParts = 0, removedInstructions = 0, hoisted = 0, reused = 0;
+
+    /**
+     * The number of variables introduced for subexpressions
+     */
+    private int temporaries = 0;
+
+    private Optimizer() {}
+
+    /**
+     * Optimizes all code bodies of a program
+     * @param instructions The resolved instructions of the program, changed in place
+     * @return The optimizer with its report
+     */
+    public static Optimizer optimizeProgram(List<Instruction> instructions) {
+        Optimizer optimizer = new Optimizer();
+        optimizer.body(instructions);
+        return optimizer;
+    }
+
+    /**
+     * Optimizes a code body
+     * @param instructions The instructions of the code body, changed in place
+     */
+    private void body(List<Instruction> instructions) {
+        for (int i = 0; i < instructions.size(); i++) {
+            switch (instructions.get(i)) {
+                case VarInitInstruction inst -> fold(inst.getValue(), null);
+                case VarModifyInstruction inst -> {
+                    if (inst.getValue() != null)
+                        fold(inst.getValue(), inst.isReassign() ? null : inst.getOperator());
+                }
+                case PrintInstruction inst -> fold(inst.getValue(), null);
+                case IfInstruction inst -> {
+                    Boolean taken = condition(inst.getCondition());
+                    if (taken == null) {
+                        body(inst.getIfInstructions());
+                        if (inst.hasElse())
+                            body(inst.getElseInstructions());
+                        continue;
+                    }
+                    List<Instruction> kept = taken ? inst.getIfInstructions() : inst.hasElse() ? inst.getElseInstructions() : List.of();
+                    List<Instruction> dead = taken ? inst.hasElse() ? inst.getElseInstructions() : List.of() : inst.getIfInstructions();
+                    //the variables of the taken body have to stay in their own scope
+                    if (kept.stream().anyMatch(k -> k instanceof VarInitInstruction)) {
+                        if (!dead.isEmpty()) {
+                            removed(inst.getIndex(), "if condition is always " + taken + ", removed the body that is never run", count(dead));
+                            dead.clear();
+                        }
+                        body(kept);
+                        continue;
+                    }
+                    removed(inst.getIndex(), "if condition is always " + taken + (kept.isEmpty() ? ", removed the if" : ", replaced the if by the body that is run"), count(dead) + 1);
+                    instructions.remove(i);
+                    instructions.addAll(i, kept);
+                    //the moved instructions are optimized in their new place
+                    i--;
+                }
+                case WhileInstruction inst -> {
+                    if (condition(inst.getCondition()) == Boolean.FALSE) {
+                        removed(inst.getIndex(), "while condition is always false, removed the loop", count(List.of(inst)));
+                        instructions.remove(i--);
+                        continue;
+                    }
+                    body(inst.getInstructions());
+                    reuse(inst.getInstructions());
+                    //the condition is first evaluated right before the loop
+                    List<Instruction> hoisted = hoist(inst.getIndex(), inst.getCondition(), List.of(inst.getInstructions()));
+                    instructions.addAll(i, hoisted);
+                    i += hoisted.size();
+                }
+                case ForInstruction inst -> {
+                    body(inst.getTopStart());
+                    if (condition(inst.getTopCondition()) == Boolean.FALSE) {
+                        //the first part of the head still runs
+                        int dead = count(inst.getLoop()) + count(inst.getTopLoop());
+                        if (dead > 0)
+                            removed(inst.getIndex(), "for condition is always false, removed the loop body", dead);
+                        inst.getLoop().clear();
+                        inst.getTopLoop().clear();
+                        continue;
+                    }
+                    body(inst.getTopLoop());
+                    body(inst.getLoop());
+                    reuse(inst.getLoop());
+                    //the condition is first evaluated right after the first part of the head
+                    inst.getTopStart().addAll(hoist(inst.getIndex(), inst.getTopCondition(), List.of(inst.getTopLoop(), inst.getLoop())));
+                }
+                case ExitInstruction inst -> {
+                    List<Instruction> dead = instructions.subList(i + 1, instructions.size());
+                    if (!dead.isEmpty())
+                        removed(inst.getIndex(), "removed everything after the exit", count(dead));
+                    dead.clear();
+                }
+                default -> {}
+            }
+        }
+    }
+
+    /**
+     * Folds the values of a condition and decides it if possible
+     * @param condition The condition
+     * @return The result of the condition, null if it isn't constant
+     */
+    private Boolean condition(Condition condition) {
+        if (condition.isChain()) {
+            for (Couple<Condition.ChainOperator, Condition> c : condition.getChain())
+                condition(c.second());
+        } else {
+            fold(condition.getFirst(), null);
+            fold(condition.getSecond(), null);
+        }
+        return condition.constant();
+    }
+
+    private void fold(Value value, Value.Operator modification) {
+        int folded = value.fold(modification);
+        if (folded == 0)
+            return;
+        foldedParts += folded;
+        changes.add(value.getIndex() + ": folded " + folded + " value part" + (folded == 1 ? "" : "s"));
+    }
+
+    /**
+     * Hoists the invariant subexpressions a loop condition starts with into new variables initialized in front of the loop,
+     * then reads them from the variables everywhere in the loop
+     * @param index The position of the loop in the source code
+     * @param condition The loop condition
+     * @param bodies The code bodies run by the loop (besides the condition)
+     * @return The initializations of the new variables, to be run right before the condition is evaluated the first time
+     */
+    private List<Instruction> hoist(int index, Condition condition, List<List<Instruction>> bodies) {
+        Set<String> written = new HashSet<>();
+        for (List<Instruction> body : bodies)
+            written(body, written);
+        //only the first part condition of a chain is always evaluated, its first value before its second
+        Condition first = condition.isChain() ? condition.getChain().getFirst().second() : condition;
+        List<Instruction> inits = new ArrayList<>();
+        for (Value value : List.of(first.getFirst(), first.getSecond())) {
+            if (value.single() == null) {
+                int[] range = null;
+                for (int[] r : value.subexpressions(null))
+                    if (first(value, r, null) && invariant(value, r, written) && (range == null || r[1] - r[0] > range[1] - range[0]))
+                        range = r;
+                if (range == null)
+                    break;
+                List<Value.ValuePart> key = key(value, range[0], range[1]);
+                String name = temporary();
+                inits.add(VarInitInstruction.of(name, value.subvalue(range[0], range[1])));
+                Value.VarPart variable = new Value.VarPart(Value.Operator.NONE, name, 0, 0);
+                int count = 0;
+                List<Use> uses = new ArrayList<>();
+                uses(condition, uses);
+                for (List<Instruction> body : bodies)
+                    uses(body, uses);
+                for (Use use : uses)
+                    count += replace(use, key, variable);
+                hoisted++;
+                reused += count - 1;
+                changes.add(index + ": hoisted a subexpression of " + key.size() + " parts in front of the loop as " + name + " (used " + count + " times in the loop)");
+            }
+            //whatever is computed after a value that isn't a single part can't be computed ahead anymore
+            if (value.single() == null || value.single() instanceof Value.InputPart)
+                break;
+        }
+        return inits;
+    }
+
+    /**
+     * Computes the subexpressions used more than once in a code body only once, in a new variable initialized in front of their first use<br>
+     * Only the values of the body itself are looked at, a subexpression is reused until something in the body writes one of its variables
+     * @param body The code body, changed in place
+     */
+    private void reuse(List<Instruction> body) {
+        for (int k = 0; k < body.size(); k++) {
+            Use source = use(body.get(k));
+            if (source == null)
+                continue;
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                //the longest subexpressions are reused first
+                List<int[]> ranges = source.value.subexpressions(source.modification);
+                ranges.sort((a, b) -> (b[1] - b[0]) - (a[1] - a[0]));
+                for (int[] range : ranges) {
+                    if (!first(source.value, range, source.modification) || !invariant(source.value, range, Set.of()))
+                        continue;
+                    List<Value.ValuePart> key = key(source.value, range[0], range[1]);
+                    Set<String> names = names(key);
+                    //the later uses until one of the variables is written
+                    List<Use> later = new ArrayList<>();
+                    if (Collections.disjoint(written(List.of(body.get(k)), new HashSet<>()), names)) {
+                        for (int m = k + 1; m < body.size(); m++) {
+                            Instruction inst = body.get(m);
+                            boolean writes = !Collections.disjoint(written(List.of(inst), new HashSet<>()), names);
+                            //loops evaluate their condition again after running their body
+                            if (writes && (inst instanceof WhileInstruction || inst instanceof ForInstruction))
+                                break;
+                            direct(inst, later);
+                            if (writes)
+                                break;
+                        }
+                    }
+                    if (later.stream().noneMatch(u -> contains(u, key)) && !twice(source, key))
+                        continue;
+                    String name = temporary();
+                    body.add(k++, VarInitInstruction.of(name, source.value.subvalue(range[0], range[1])));
+                    Value.VarPart variable = new Value.VarPart(Value.Operator.NONE, name, 0, 0);
+                    int count = replace(source, key, variable);
+                    for (Use use : later)
+                        count += replace(use, key, variable);
+                    reused += count - 1;
+                    changes.add(source.value.getIndex() + ": computed a subexpression of " + key.size() + " parts once as " + name + " (used " + count + " times)");
+                    changed = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * A value and how it is used
+     * @param value The value
+     * @param modification The operator a variable modification combines the variable with the value by, null for any other value
+     */
+    private record Use(Value value, Value.Operator modification) {}
+
+    /**
+     * @param inst An instruction
+     * @return The value of a variable initialization, modification or print instruction, null for any other instruction
+     */
+    private static Use use(Instruction inst) {
+        return switch (inst) {
+            case VarInitInstruction i -> new Use(i.getValue(), null);
+            case VarModifyInstruction i when i.getValue() != null -> new Use(i.getValue(), i.isReassign() ? null : i.getOperator());
+            case PrintInstruction i -> new Use(i.getValue(), null);
+            default -> null;
+        };
+    }
+
+    /**
+     * Collects the values of an instruction without the ones in its code bodies
+     */
+    private static void direct(Instruction inst, List<Use> uses) {
+        switch (inst) {
+            case IfInstruction i -> uses(i.getCondition(), uses);
+            case WhileInstruction i -> uses(i.getCondition(), uses);
+            case ForInstruction i -> uses(i.getTopCondition(), uses);
+            default -> {
+                Use use = use(inst);
+                if (use != null)
+                    uses.add(use);
+            }
+        }
+    }
+
+    /**
+     * Collects all values of a code body, including the ones in nested code bodies
+     */
+    private static void uses(List<Instruction> instructions, List<Use> uses) {
+        for (Instruction inst : instructions) {
+            direct(inst, uses);
+            switch (inst) {
+                case IfInstruction i -> {
+                    uses(i.getIfInstructions(), uses);
+                    if (i.hasElse())
+                        uses(i.getElseInstructions(), uses);
+                }
+                case WhileInstruction i -> uses(i.getInstructions(), uses);
+                case ForInstruction i -> {
+                    uses(i.getTopStart(), uses);
+                    uses(i.getTopLoop(), uses);
+                    uses(i.getLoop(), uses);
+                }
+                default -> {}
+            }
+        }
+    }
+
+    private static void uses(Condition condition, List<Use> uses) {
+        if (condition.isChain()) {
+            for (Couple<Condition.ChainOperator, Condition> c : condition.getChain())
+                uses(c.second(), uses);
+            return;
+        }
+        uses.add(new Use(condition.getFirst(), null));
+        uses.add(new Use(condition.getSecond(), null));
+    }
+
+    /**
+     * Collects the names of the variables initialized or modified by a code body, including nested code bodies
+     * @return The names
+     */
+    private static Set<String> written(List<Instruction> instructions, Set<String> names) {
+        for (Instruction inst : instructions) {
+            switch (inst) {
+                case VarInitInstruction i -> names.add(i.getName());
+                case VarModifyInstruction i -> names.add(i.getName());
+                case IfInstruction i -> {
+                    written(i.getIfInstructions(), names);
+                    if (i.hasElse())
+                        written(i.getElseInstructions(), names);
+                }
+                case WhileInstruction i -> written(i.getInstructions(), names);
+                case ForInstruction i -> {
+                    written(i.getTopStart(), names);
+                    written(i.getTopLoop(), names);
+                    written(i.getLoop(), names);
+                }
+                default -> {}
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Whether a subexpression would be the first thing computed when its value is evaluated,
+     * with nothing but variables or literals read before it (see Value.compile for the order)
+     * @param value The value
+     * @param range The subexpression
+     * @param modification The operator a variable modification combines the variable with the value by, null for any other value
+     */
+    private static boolean first(Value value, int[] range, Value.Operator modification) {
+        if (range[0] == 0)
+            return true;
+        //only a single part in front of the second term is read before it, a modification combines its variable with that first
+        return range[0] == 1 && modification == null && !(value.getParts().getFirst() instanceof Value.InputPart);
+    }
+
+    /**
+     * Whether a subexpression neither reads user input nor any of the written variables
+     */
+    private static boolean invariant(Value value, int[] range, Set<String> written) {
+        for (int i = range[0]; i < range[1]; i++) {
+            Value.ValuePart part = value.getParts().get(i);
+            if (part instanceof Value.InputPart || part instanceof Value.VarPart v && written.contains(v.name()))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * The parts of a subexpression to compare it with others by, variables only by their name
+     */
+    private static List<Value.ValuePart> key(Value value, int start, int end) {
+        List<Value.ValuePart> key = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            Value.ValuePart part = value.getParts().get(i);
+            Value.Operator op = i == start ? Value.Operator.NONE : part.operator();
+            key.add(part instanceof Value.VarPart v ? new Value.VarPart(op, v.name(), 0, 0) : Value.withOperator(part, op));
+        }
+        return key;
+    }
+
+    private static Set<String> names(List<Value.ValuePart> key) {
+        Set<String> names = new HashSet<>();
+        for (Value.ValuePart part : key)
+            if (part instanceof Value.VarPart v)
+                names.add(v.name());
+        return names;
+    }
+
+    /**
+     * Whether a subexpression is used in a value
+     */
+    private static boolean contains(Use use, List<Value.ValuePart> key) {
+        for (int[] range : use.value.subexpressions(use.modification))
+            if (range[1] - range[0] == key.size() && key(use.value, range[0], range[1]).equals(key))
+                return true;
+        return false;
+    }
+
+    /**
+     * Whether a subexpression is used more than once in a value
+     */
+    private static boolean twice(Use use, List<Value.ValuePart> key) {
+        int count = 0;
+        for (int[] range : use.value.subexpressions(use.modification))
+            if (range[1] - range[0] == key.size() && key(use.value, range[0], range[1]).equals(key) && ++count > 1)
+                return true;
+        return false;
+    }
+
+    /**
+     * Replaces every use of a subexpression in a value by a variable
+     * @return The number of replaced uses
+     */
+    private static int replace(Use use, List<Value.ValuePart> key, Value.VarPart variable) {
+        int count = 0;
+        boolean found = true;
+        while (found) {
+            found = false;
+            for (int[] range : use.value.subexpressions(use.modification)) {
+                if (range[1] - range[0] == key.size() && key(use.value, range[0], range[1]).equals(key)) {
+                    use.value.replace(range[0], range[1], variable);
+                    count++;
+                    found = true;
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The name of a new variable, source code variables only consist of letters
+     */
+    private String temporary() {
+        return "#" + ++temporaries;
+    }
+
+    /**
+     * Notes down the removal of instructions
+     * @param index The position of the change in the source code
+     * @param change What was changed
+     * @param count The number of removed instructions
+     */
+    private void removed(int index, String change, int count) {
+        removedInstructions += count;
+        changes.add(index + ": " + change + " (" + count + " instruction" + (count == 1 ? "" : "s") + ")");
+    }
+
+    /**
+     * @param instructions A code body
+     * @return The number of instructions in the code body, including the ones in nested code bodies
+     */
+    private static int count(List<Instruction> instructions) {
+        int count = instructions.size();
+        for (Instruction i : instructions) {
+            switch (i) {
+                case IfInstruction inst -> count += count(inst.getIfInstructions()) + (inst.hasElse() ? count(inst.getElseInstructions()) : 0);
+                case WhileInstruction inst -> count += count(inst.getInstructions());
+                case ForInstruction inst -> count += count(inst.getTopStart()) + count(inst.getTopLoop()) + count(inst.getLoop());
+                default -> {}
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return A summary of the changes, followed by one line per change
+     */
+    public List<String> getReport() {
+        List<String> report = new ArrayList<>();
+        report.add("Optimizer: folded " + foldedParts + " value parts, removed " + removedInstructions + " instructions, hoisted "
+                + hoisted + " subexpressions out of loops, reused " + reused + " subexpressions");
+        for (String change : changes)
+            report.add("  " + change);
+        return report;
+    }
+
+    public int getFoldedParts() {
+        return foldedParts;
+    }
+
+    public int getRemovedInstructions() {
+        return removedInstructions;
+    }
+
+    public int getHoisted() {
+        return hoisted;
+    }
+
+    public int getReused() {
+        return reused;
+    }
+}
@@ -0,0 +1,22 @@
+package xeraction.lettercode.util;
+
+/**
+ * Receives everything a program prints<br>
+ * Every method prints the value followed by a line separator, the same way System.out.println would
+ */
+public interface OutputSink {
+    void println(int value);
+
+    void println(double value);
+
+    void println(char value);
+
+    void println(boolean value);
+
+    void println(String value);
+
+    /**
+     * Writes out everything printed so far
+     */
+    void flush();
+}
@@ -0,0 +1,109 @@
+package xeraction.lettercode.util;
+
+import xeraction.lettercode.Lettercode;
+import xeraction.lettercode.instructions.Instruction;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Utility class for precompiled programs (.lcc files), the parsed instructions of a program in binary form<br>
+ * Format: the magic bytes "LCC", the format version, the SHA-256 hash of the source, the string table and the instructions
+ * (every instruction, value and condition writes its own content, lists are prefixed with their size)<br>
+ * Loading maps the file into memory and reads the instructions from it directly, without parsing the source
+ */
+public class ProgramFile {
+    private static final byte[] MAGIC = {'L', 'C', 'C'};
+
+    /**
+     * The version of the format, has to be increased whenever the content of an instruction changes
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * @param source The program file
+     * @return The precompiled file next to it (same name with the extension .lcc)
+     */
+    public static Path of(Path source) {
+        String name = source.getFileName().toString();
+        if (name.endsWith(".lc"))
+            name = name.substring(0, name.length() - 3);
+        return source.resolveSibling(name + ".lcc");
+    }
+
+    /**
+     * Writes a precompiled program (to a temporary file first, so nobody ever reads a half written file)
+     * @param file The file to write
+     * @param source The source the instructions were parsed from
+     * @param instructions The parsed instructions
+     */
+    public static void save(Path file, CharSequence source, List<Instruction> instructions) {
+        ProgramWriter writer = new ProgramWriter();
+        writer.instructions(instructions);
+        try {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                out.write(MAGIC);
+                out.write(VERSION);
+                out.write(hash(source));
+                out.write(writer.toByteArray());
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Lettercode.error("Couldn't write precompiled program.", e);
+        }
+    }
+
+    /**
+     * Loads a precompiled program if it is up to date
+     * @param file The precompiled file
+     * @param source The current source of the program
+     * @return The parsed (not yet resolved) instructions, null if the file doesn't exist, is outdated or can't be read
+     */
+    public static List<Instruction> load(Path file, CharSequence source) {
+        if (!Files.isRegularFile(file))
+            return null;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || buffer.get() != VERSION)
+                return null;
+            byte[] hash = new byte[32];
+            buffer.get(hash);
+            if (!Arrays.equals(hash, hash(source)))
+                return null;
+            ProgramReader reader = new ProgramReader(buffer);
+            List<Instruction> instructions = reader.instructions();
+            return reader.isDone() ? instructions : null;
+        } catch (IOException | RuntimeException e) {
+            //a broken file is just parsed again
+            return null;
+        }
+    }
+
+    private static byte[] hash(CharSequence source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            //mapped sources are hashed without copying them
+            if (source instanceof AsciiSource ascii)
+                digest.update(ascii.bytes());
+            else
+                digest.update(source.toString().getBytes(StandardCharsets.UTF_8));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
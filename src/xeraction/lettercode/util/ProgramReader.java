@@ -0,0 +1,119 @@
+package xeraction.lettercode.util;
+
+import xeraction.lettercode.instructions.Instruction;
+import xeraction.lettercode.instructions.Instructions;
+import xeraction.lettercode.instructions.VarModifyInstruction;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads instructions in the binary program format (see {@link ProgramFile}) straight from a buffer
+ */
+public class ProgramReader {
+    private final ByteBuffer buffer;
+
+    /**
+     * The string table
+     */
+    private final String[] strings;
+
+    /**
+     * The source position read last
+     */
+    private int lastIndex = 0;
+
+    /**
+     * @param buffer The buffer with its position at the string table
+     */
+    public ProgramReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        strings = new String[count()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] utf = new byte[count()];
+            buffer.get(utf);
+            strings[i] = new String(utf, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Reads a list of instructions written by {@link ProgramWriter#instructions}
+     * @return The instructions
+     */
+    public List<Instruction> instructions() {
+        int size = count();
+        List<Instruction> instructions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            char identifier = (char)buffer.get();
+            //variable modifications don't have an identifier of their own
+            Instruction inst = identifier == ' ' ? new VarModifyInstruction() : Instructions.get(identifier);
+            if (inst == null)
+                throw new IllegalStateException("Unknown instruction " + identifier);
+            int index = readIndex();
+            inst = inst.read(this);
+            inst.setIndex(index);
+            instructions.add(inst);
+        }
+        return instructions;
+    }
+
+    public int readByte() {
+        return buffer.get() & 0xFF;
+    }
+
+    public boolean readBoolean() {
+        return buffer.get() != 0;
+    }
+
+    public char readChar() {
+        return (char)readInt();
+    }
+
+    /**
+     * Reads a source position written by {@link ProgramWriter#writeIndex}
+     */
+    public int readIndex() {
+        lastIndex += readInt();
+        return lastIndex;
+    }
+
+    public int readInt() {
+        int zigzag = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            zigzag |= (b & 0x7F) << shift;
+            if (b >= 0)
+                break;
+            if (shift > 28)
+                throw new IllegalStateException("Malformed number");
+        }
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    public double readDouble() {
+        return buffer.getDouble();
+    }
+
+    public String readString() {
+        return strings[readInt()];
+    }
+
+    /**
+     * Reads the size of something, which can't be larger than the rest of the buffer
+     */
+    private int count() {
+        int count = readInt();
+        if (count < 0 || count > buffer.remaining())
+            throw new IllegalStateException("Malformed size");
+        return count;
+    }
+
+    /**
+     * @return Whether everything has been read
+     */
+    public boolean isDone() {
+        return !buffer.hasRemaining();
+    }
+}
@@ -0,0 +1,108 @@
+package xeraction.lettercode.util;
+
+import xeraction.lettercode.instructions.Instruction;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes parsed instructions in the binary program format (see {@link ProgramFile})<br>
+ * Numbers are written as variable length integers, strings are collected in a table and written as their index
+ */
+public class ProgramWriter {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    /**
+     * The string table, every string is only stored once
+     */
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIndices = new HashMap<>();
+
+    /**
+     * The source position written last
+     */
+    private int lastIndex = 0;
+
+    /**
+     * Writes a list of instructions: their number, then every instruction starting with its identifier and source position
+     * @param instructions The instructions
+     */
+    public void instructions(List<Instruction> instructions) {
+        writeInt(instructions.size());
+        for (Instruction i : instructions) {
+            writeByte(i.identifier());
+            writeIndex(i.getIndex());
+            i.write(this);
+        }
+    }
+
+    public void writeByte(int value) {
+        out.write(value);
+    }
+
+    public void writeBoolean(boolean value) {
+        out.write(value ? 1 : 0);
+    }
+
+    public void writeChar(char value) {
+        writeInt(value);
+    }
+
+    /**
+     * Writes an int in as few bytes as possible (7 bits per byte, small negative numbers stay small)
+     */
+    public void writeInt(int value) {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7F) != 0) {
+            out.write((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        out.write(zigzag);
+    }
+
+    /**
+     * Writes a source position, as the distance to the one written before (positions are written in ascending order, so that stays small)
+     */
+    public void writeIndex(int index) {
+        writeInt(index - lastIndex);
+        lastIndex = index;
+    }
+
+    public void writeDouble(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8)
+            out.write((int)(bits >>> shift));
+    }
+
+    /**
+     * Writes a string as its index in the string table
+     */
+    public void writeString(String value) {
+        Integer index = stringIndices.get(value);
+        if (index == null) {
+            index = strings.size();
+            strings.add(value);
+            stringIndices.put(value, index);
+        }
+        writeInt(index);
+    }
+
+    /**
+     * @return The string table followed by everything written so far
+     */
+    public byte[] toByteArray() {
+        ProgramWriter table = new ProgramWriter();
+        table.writeInt(strings.size());
+        for (String s : strings) {
+            byte[] utf = s.getBytes(StandardCharsets.UTF_8);
+            table.writeInt(utf.length);
+            table.out.writeBytes(utf);
+        }
+        table.out.writeBytes(out.toByteArray());
+        return table.out.toByteArray();
+    }
+}
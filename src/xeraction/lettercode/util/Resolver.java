@@ -0,0 +1,133 @@
+package xeraction.lettercode.util;
+
+import xeraction.lettercode.Lettercode;
+import xeraction.lettercode.instructions.Instruction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves variable names to their (depth, slot) coordinate after parsing<br>
+ * The depth is the nesting level of the scope the variable was initialized in, the slot its index inside that scope<br>
+ * Since code bodies can only be nested, never called, every scope on the same depth can share one frame during execution
+ */
+public class Resolver {
+    /**
+     * The scope structure represented by the variable names and their slots on a stack
+     */
+    private final Deque<Map<String, Integer>> scopes = new ArrayDeque<>();
+
+    /**
+     * The number of slots needed for each depth (the biggest scope on that depth)
+     */
+    private final List<Integer> frameSizes = new ArrayList<>();
+
+    public Resolver() {
+        //the scope of the main code
+        scopes.push(new HashMap<>());
+        frameSizes.add(0);
+    }
+
+    /**
+     * Resolves all variables of a program
+     * @param instructions The instructions of the program
+     * @return The frame sizes needed to execute the program
+     */
+    public static int[] resolveProgram(List<Instruction> instructions) {
+        Resolver resolver = new Resolver();
+        for (Instruction i : instructions)
+            i.resolve(resolver);
+        return resolver.frameSizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Resolves a code body in its own scope
+     * @param instructions The instructions of the code body
+     * @return The scope of the body, null if it doesn't initialize any variables
+     */
+    public Scope resolveBody(List<Instruction> instructions) {
+        pushScope();
+        for (Instruction i : instructions)
+            i.resolve(this);
+        return popScope();
+    }
+
+    /**
+     * Open a new scope (new code body)
+     */
+    public void pushScope() {
+        scopes.push(new HashMap<>());
+        if (frameSizes.size() < scopes.size())
+            frameSizes.add(0);
+    }
+
+    /**
+     * Close the top scope
+     * @return The closed scope, null if no variables were initialized in it
+     */
+    public Scope popScope() {
+        int depth = depth();
+        Map<String, Integer> scope = scopes.pop();
+        return scope.isEmpty() ? null : new Scope(depth, scope.size());
+    }
+
+    /**
+     * @return The depth of the top scope
+     */
+    public int depth() {
+        return scopes.size() - 1;
+    }
+
+    /**
+     * Initialize a variable on the top scope (initializing it again on the same scope reuses its slot)
+     * @param name The variable name
+     * @return The slot of the variable in the top scope
+     */
+    public int declare(String name) {
+        Map<String, Integer> scope = scopes.getFirst();
+        Integer slot = scope.get(name);
+        if (slot != null)
+            return slot;
+        slot = scope.size();
+        scope.put(name, slot);
+        frameSizes.set(depth(), Math.max(frameSizes.get(depth()), scope.size()));
+        return slot;
+    }
+
+    /**
+     * Looks up a variable, starting from the top scope
+     * @param name The variable name
+     * @param index The position in the source of the value or instruction using the variable, for the error if it doesn't exist
+     * @return The depth and slot of the variable
+     */
+    public Slot lookup(String name, int index) {
+        int depth = depth();
+        for (Map<String, Integer> scope : scopes) {
+            Integer slot = scope.get(name);
+            if (slot != null)
+                return new Slot(depth, slot);
+            depth--;
+        }
+        Lettercode.error("Unknown variable: " + name + " (" + index + ")", index);
+        return null;
+    }
+
+    /**
+     * The coordinate of a variable
+     * @param depth The depth of the scope the variable lives in
+     * @param index The index of the variable inside that scope
+     */
+    public record Slot(int depth, int index) {}
+
+    /**
+     * A scope that initializes variables and has to be cleared when it is closed<br>
+     * Scopes without variables don't need any managing during execution, so the resolver leaves them out
+     * @param depth The depth of the scope
+     * @param size The number of slots used by its variables
+     */
+    public record Scope(int depth, int size) {}
+}
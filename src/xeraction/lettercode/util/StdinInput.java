@@ -0,0 +1,74 @@
+package xeraction.lettercode.util;
+
+import xeraction.lettercode.Lettercode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An input provider reading from the standard input, one input per line<br>
+ * Once the first input is requested, a background thread keeps reading and converting lines ahead of the program
+ */
+public class StdinInput implements InputProvider {
+    /**
+     * How many lines are read ahead at most
+     */
+    private static final int PREFETCH = 1024;
+
+    /**
+     * Marks the end of the standard input in the queue
+     */
+    private static final Value.ValuePart END = new Value.InputPart(Value.Operator.NONE);
+
+    private final BlockingQueue<Value.ValuePart> queue = new ArrayBlockingQueue<>(PREFETCH);
+
+    private boolean started = false, ended = false;
+
+    /**
+     * The error the background thread ran into, reported once the input before it is used up
+     */
+    private volatile IOException error;
+
+    public Value.ValuePart next() {
+        if (ended)
+            return null;
+        if (!started) {
+            started = true;
+            Thread reader = new Thread(this::prefetch, "Lettercode input");
+            reader.setDaemon(true);
+            reader.start();
+        }
+        Value.ValuePart part;
+        try {
+            part = queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        if (part == END) {
+            ended = true;
+            if (error != null)
+                Lettercode.error("Couldn't read input.", error);
+            return null;
+        }
+        return part;
+    }
+
+    private void prefetch() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in))) {
+            String line;
+            while ((line = reader.readLine()) != null)
+                queue.put(Input.parse(line));
+        } catch (IOException e) {
+            error = e;
+        } catch (InterruptedException ignored) {
+            //nothing is waiting for more input
+        }
+        try {
+            queue.put(END);
+        } catch (InterruptedException ignored) {}
+    }
+}
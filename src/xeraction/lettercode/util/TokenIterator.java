@@ -0,0 +1,115 @@
+package xeraction.lettercode.util;
+
+import static xeraction.lettercode.util.Lexer.*;
+
+/**
+ * The iterator used for parsing, moving over the tokens of the lexer
+ */
+public class TokenIterator {
+    /**
+     * The most tokens held at once
+     */
+    private static final int CHUNK = 4096;
+
+    /**
+     * The source code that is being iterated over
+     */
+    private final CharSequence source;
+
+    /**
+     * The lexer and the chunk of tokens it produced last
+     */
+    private final Lexer lexer;
+    private final int[] tokens;
+    private int count;
+
+    /**
+     * The position of the current token in the token array
+     */
+    private int token = 0;
+
+    public TokenIterator(CharSequence source) {
+        this.source = source;
+        lexer = new Lexer(source);
+        //small programs don't need the whole chunk
+        tokens = new int[SIZE * Math.min(CHUNK, source.length() + 1)];
+        count = lexer.lex(tokens) * SIZE;
+    }
+
+    /**
+     * Moves the iterator to the next token and returns its character
+     * @return The character of the next token
+     */
+    public char next() {
+        if (hasNext()) {
+            token += SIZE;
+            //get the next chunk from the lexer (there always is one before the end token)
+            if (token == count) {
+                count = lexer.lex(tokens) * SIZE;
+                token = 0;
+            }
+        }
+        return current();
+    }
+
+    /**
+     * Returns the character of the current token without moving the iterator<br>
+     * That is the first character of variable names, the surrounding character of literals and 0 at the end of the code
+     * @return The character of the current token
+     */
+    public char current() {
+        return tokens[token] == END ? 0 : source.charAt(tokens[token + 1]);
+    }
+
+    /**
+     * Checks whether the iterator has reached the end of the code
+     * @return true if there are tokens left
+     */
+    public boolean hasNext() {
+        return tokens[token] != END;
+    }
+
+    /**
+     * Returns the position of the current token in the source code
+     * @return The position of the current token in the source code
+     */
+    public int getIndex() {
+        return tokens[token + 1];
+    }
+
+    /**
+     * Checks whether the current token is a variable name
+     * @return true if the current token is a variable name
+     */
+    public boolean isName() {
+        return tokens[token] == NAME;
+    }
+
+    /**
+     * Checks whether the current token is a literal value
+     * @return true if the current token is a literal value
+     */
+    public boolean isLiteral() {
+        return tokens[token] == LITERAL;
+    }
+
+    /**
+     * Returns the content of the current literal (without its surrounding characters) and moves to the next token
+     * @return The content of the literal
+     */
+    public String getBetween() {
+        String s = source.subSequence(tokens[token + 1] + 1, tokens[token + 2] - 1).toString();
+        next();
+        return s;
+    }
+
+    /**
+     * Returns the current variable name and moves to the next token
+     * @return The variable name (in lowercase)
+     */
+    public String getVarName() {
+        String s = source.subSequence(tokens[token + 1], tokens[token + 2]).toString();
+        next();
+        return s.toLowerCase();
+    }
+}
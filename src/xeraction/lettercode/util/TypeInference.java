@@ -0,0 +1,260 @@
+package xeraction.lettercode.util;
+
+import xeraction.lettercode.Lettercode;
+import xeraction.lettercode.instructions.ForInstruction;
+import xeraction.lettercode.instructions.IfInstruction;
+import xeraction.lettercode.instructions.Instruction;
+import xeraction.lettercode.instructions.PrintInstruction;
+import xeraction.lettercode.instructions.VarInitInstruction;
+import xeraction.lettercode.instructions.VarModifyInstruction;
+import xeraction.lettercode.instructions.WhileInstruction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Infers the type of every variable at every point of a resolved program, following the order the instructions run in<br>
+ * A variable has the type it is initialized with until a modification changes it. After an if it has the type both bodies
+ * leave it with, and loops are gone through until the types at their start don't change anymore. A variable with different
+ * types on different paths (or holding user input) only has a type while running.<br>
+ * With these types
+ * <ul>
+ *     <li>values and conditions are specialized before running, the types of their parts are never checked while running then</li>
+ *     <li>combinations and comparisons that always fail are reported before running, all at once (also in code that never runs,
+ *     like unknown variables)</li>
+ * </ul>
+ */
+public class TypeInference {
+    /**
+     * Stands for a type that is only known while running (user input, or a variable with different types on different paths)
+     */
+    private static final Value.Type ANY = Value.Type.INPUT;
+
+    /**
+     * The type of every variable slot at the current point, missing if no variable lives in it
+     */
+    private Map<Resolver.Slot, Value.Type> types = new HashMap<>();
+
+    /**
+     * Whether values are specialized and errors reported, only on the last time a loop is gone through
+     */
+    private boolean record = true;
+
+    /**
+     * The errors found, with their position in the source code
+     */
+    private final List<String> errors = new ArrayList<>();
+    private int firstError = -1;
+
+    private TypeInference() {}
+
+    /**
+     * Infers the types of a resolved program and specializes its values and conditions
+     * @param instructions The resolved instructions of the program
+     * @throws LettercodeException If a combination or comparison always fails, listing all of them
+     */
+    public static void inferProgram(List<Instruction> instructions) {
+        TypeInference inference = new TypeInference();
+        inference.instructions(instructions);
+        if (!inference.errors.isEmpty())
+            Lettercode.error(String.join("\n", inference.errors), inference.firstError);
+    }
+
+    /**
+     * Infers the types of a resolved program and specializes its values and conditions, without reporting errors<br>
+     * Used on the optimized program: removing code can leave a variable with one type where the program as written
+     * has several, so combinations that only fail in code that never runs would be reported
+     * @param instructions The resolved instructions of the program, already checked with inferProgram
+     */
+    public static void specializeProgram(List<Instruction> instructions) {
+        new TypeInference().instructions(instructions);
+    }
+
+    private void instructions(List<Instruction> instructions) {
+        for (Instruction inst : instructions) {
+            switch (inst) {
+                case VarInitInstruction i -> types.put(new Resolver.Slot(i.getDepth(), i.getSlot()), value(i.getValue()).type);
+                case VarModifyInstruction i -> types.put(new Resolver.Slot(i.getDepth(), i.getSlot()), value(i.getModification()).type);
+                case PrintInstruction i -> value(i.getValue());
+                case IfInstruction i -> {
+                    condition(i.getCondition());
+                    Map<Resolver.Slot, Value.Type> before = new HashMap<>(types);
+                    instructions(i.getIfInstructions());
+                    Map<Resolver.Slot, Value.Type> taken = types;
+                    types = before;
+                    if (i.hasElse())
+                        instructions(i.getElseInstructions());
+                    types = join(taken, types);
+                }
+                case WhileInstruction i -> loop(i.getCondition(), List.of(i.getInstructions()));
+                case ForInstruction i -> {
+                    instructions(i.getTopStart());
+                    loop(i.getTopCondition(), List.of(i.getLoop(), i.getTopLoop()));
+                }
+                default -> {}
+            }
+        }
+    }
+
+    /**
+     * Goes through a loop until the types at its start don't change anymore, then once more to record
+     * @param condition The loop condition
+     * @param bodies The code bodies run after the condition in every iteration
+     */
+    private void loop(Condition condition, List<List<Instruction>> bodies) {
+        boolean recording = record;
+        record = false;
+        while (true) {
+            Map<Resolver.Slot, Value.Type> start = new HashMap<>(types);
+            condition(condition);
+            for (List<Instruction> body : bodies)
+                instructions(body);
+            types = join(start, types);
+            if (types.equals(start))
+                break;
+        }
+        record = recording;
+        if (record) {
+            //the loop ends with the types at its start
+            Map<Resolver.Slot, Value.Type> start = new HashMap<>(types);
+            condition(condition);
+            for (List<Instruction> body : bodies)
+                instructions(body);
+            types = start;
+        }
+    }
+
+    /**
+     * Joins the types of two paths, a variable with different types only has a type while running
+     */
+    private static Map<Resolver.Slot, Value.Type> join(Map<Resolver.Slot, Value.Type> a, Map<Resolver.Slot, Value.Type> b) {
+        Map<Resolver.Slot, Value.Type> joined = new HashMap<>(a);
+        b.forEach((slot, type) -> joined.merge(slot, type, (x, y) -> x == y ? x : ANY));
+        return joined;
+    }
+
+    /**
+     * The type of a value and the specialization it got
+     */
+    private record Inferred(Value.Type type, Value.Specialization specialization) {}
+
+    /**
+     * Infers the type of a value, specializes it and reports failing combinations
+     * @param value The value
+     * @return The type of the value and its specialization (UNINITIALIZED if not recording)
+     */
+    private Inferred value(Value value) {
+        List<Value.ValuePart> parts = value.getParts();
+        Value.Type[] partTypes = new Value.Type[parts.size()];
+        for (int i = 0; i < parts.size(); i++)
+            partTypes[i] = type(parts.get(i));
+        Value.Specialization specialization = record ? value.specialize(partTypes) : Value.Specialization.UNINITIALIZED;
+        //combined in the same order as while running
+        Value.Type type = value.translate(this::type, (in, mod, op) -> combine(in, mod, op, value.getIndex()));
+        return new Inferred(type, specialization);
+    }
+
+    /**
+     * @return The type of a value part at the current point
+     */
+    private Value.Type type(Value.ValuePart part) {
+        return switch (part) {
+            case Value.VarPart v -> types.getOrDefault(new Resolver.Slot(v.depth(), v.slot()), ANY);
+            case Value.InputPart p -> ANY;
+            default -> part.type();
+        };
+    }
+
+    /**
+     * The type of two combined types, following the rules of Value.combine
+     * @param in The type of the base value part
+     * @param mod The type of the modifier value part
+     * @param op The operator
+     * @param index The position of the value in the source code
+     * @return The combined type, ANY if the combination always fails
+     */
+    private Value.Type combine(Value.Type in, Value.Type mod, Value.Operator op, int index) {
+        if (in == ANY || mod == ANY)
+            return ANY;
+        return switch (in) {
+            case INT -> switch (mod) {
+                case INT, CHAR, BOOLEAN -> Value.Type.INT;
+                case DOUBLE -> Value.Type.DOUBLE;
+                default -> concat(op, "integer and string", index);
+            };
+            case DOUBLE -> switch (mod) {
+                case INT, DOUBLE, CHAR, BOOLEAN -> Value.Type.DOUBLE;
+                default -> concat(op, "double and string", index);
+            };
+            case CHAR -> switch (mod) {
+                case INT -> Value.Type.CHAR;
+                case CHAR -> concat(op, "character and character", index);
+                case STRING -> concat(op, "character and string", index);
+                case DOUBLE -> error("Cannot combine a character with a double", index);
+                default -> error("Cannot combine a character with a boolean", index);
+            };
+            case BOOLEAN -> switch (mod) {
+                case INT -> Value.Type.INT;
+                case DOUBLE -> Value.Type.DOUBLE;
+                case CHAR -> error("Cannot combine a boolean with a character", index);
+                case BOOLEAN -> error("Cannot combine a boolean with another boolean", index);
+                default -> concat(op, "boolean and string", index);
+            };
+            default -> concat(op, "string", index);
+        };
+    }
+
+    private Value.Type concat(Value.Operator op, String types, int index) {
+        if (op != Value.Operator.PLUS)
+            return error("Unsupported operation for " + types + ": " + op.name(), index);
+        return Value.Type.STRING;
+    }
+
+    /**
+     * Infers the types of a condition, specializes it and reports failing comparisons
+     * @param condition The condition
+     */
+    private void condition(Condition condition) {
+        if (condition.isChain()) {
+            for (Couple<Condition.ChainOperator, Condition> c : condition.getChain())
+                condition(c.second());
+            return;
+        }
+        Inferred first = value(condition.getFirst()), second = value(condition.getSecond());
+        if (!record)
+            return;
+        if (first.type == ANY || second.type == ANY) {
+            condition.specialize(Value.Specialization.UNINITIALIZED);
+            return;
+        }
+        //the same checks as while running
+        if ((first.type == Value.Type.STRING) != (second.type == Value.Type.STRING))
+            error("Cannot compare these variable types: " + first.type.name() + " and " + second.type.name(), condition.getIndex());
+        else if (first.type == Value.Type.STRING && condition.getOperator() != Condition.CondOperator.EQUAL && condition.getOperator() != Condition.CondOperator.NEQUAL)
+            error("You can only compare two strings for equality!", condition.getIndex());
+        //compare the primitives directly if both values are specialized
+        if (isNumber(first.specialization) && isNumber(second.specialization))
+            condition.specialize(first.specialization == Value.Specialization.INT && second.specialization == Value.Specialization.INT ? Value.Specialization.INT : Value.Specialization.DOUBLE);
+        else
+            condition.specialize(Value.Specialization.GENERIC);
+    }
+
+    private static boolean isNumber(Value.Specialization specialization) {
+        return specialization == Value.Specialization.INT || specialization == Value.Specialization.DOUBLE;
+    }
+
+    /**
+     * Notes down an error (only when recording)
+     * @return ANY, so the error doesn't cause more errors
+     */
+    private Value.Type error(String msg, int index) {
+        if (record) {
+            errors.add(msg + " (" + index + ")");
+            if (firstError == -1)
+                firstError = index;
+        }
+        return ANY;
+    }
+}
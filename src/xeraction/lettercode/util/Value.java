@@ -1,10 +1,13 @@
 package xeraction.lettercode.util;
 
+import xeraction.lettercode.ExecutionContext;
 import xeraction.lettercode.Lettercode;
+import xeraction.lettercode.LettercodeException;
 
-import javax.swing.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 
 /**
  * Represents a value used by variables
@@ -16,7 +19,7 @@ public class Value {
     public static final Value ONE = new Value();
 
     static {
-        ONE.parts.add(ONE.constructPart(Type.INT, "1"));
+        ONE.parts.add(new IntPart(Operator.NONE, 1));
     }
 
     /**
@@ -24,25 +27,58 @@ public class Value {
      */
     private List<ValuePart> parts;
 
+    /**
+     * The parts in the order they are combined (postfix), compiled once after parsing<br>
+     * An entry of 0 or more pushes the part with that index, a negative one (-1 - operator) combines the top two operands
+     */
+    private int[] postfix = SINGLE;
+
+    /**
+     * The most operands on the stack at once while evaluating the postfix
+     */
+    private int maxStack = 1;
+
+    private static final int[] SINGLE = {0};
+
+    /**
+     * The position of the value in the source code, -1 if unknown
+     */
+    private int index = -1;
+
     /**
      * Whether this value has been evaluated
      */
     private boolean evaluated = false;
 
+    /**
+     * The type specialization of this value, picked on the first evaluation<br>
+     * Replaced as a whole (never modified) so executions running in parallel always see a consistent state
+     */
+    private Specialized specialized = NOT_SPECIALIZED;
+
+    private static final Specialized NOT_SPECIALIZED = new Specialized(Specialization.UNINITIALIZED, null, false);
+    private static final Specialized GENERIC = new Specialized(Specialization.GENERIC, null, false);
+
+    /**
+     * A type specialization with the types of the resolved parts it was picked for
+     */
+    private record Specialized(Specialization kind, Type[] types, boolean proven) {}
+
     public Value() {
         parts = new ArrayList<>();
     }
 
     /**
      * Parse the value
-     * @param iterator The iterator with its position at the first character of the value
+     * @param iterator The iterator with its position at the first token of the value, moved to the token after it
      */
-    public void parse(StringIterator iterator) {
+    public void parse(TokenIterator iterator) {
+        index = iterator.getIndex();
         //parse the starting value (doesn't have an operator)
         parts.add(parsePart(iterator, Operator.NONE));
         while (true) {
             //check for operators and thus subsequent values to be combined into one
-            Operator op = switch (iterator.next()) {
+            Operator op = switch (iterator.current()) {
                 case 'p' -> Operator.PLUS;
                 case 'm' -> Operator.MINUS;
                 case 'n' -> Operator.TIMES;
@@ -56,188 +92,478 @@ public class Value {
             iterator.next();
             parts.add(parsePart(iterator, op));
         }
+        compile();
+    }
+
+    /**
+     * Compiles the parts into postfix order: mult/div/mod before add/sub, operators of the same kind from left to right<br>
+     * The parts keep their order, so user input is still read from left to right
+     */
+    private void compile() {
+        specialized = NOT_SPECIALIZED;
+        if (parts.size() == 1) {
+            postfix = SINGLE;
+            maxStack = 1;
+            return;
+        }
+        int[] code = new int[parts.size() * 2 - 1];
+        Operator[] pending = new Operator[parts.size()];
+        int size = 0, waiting = 0, depth = 0, max = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            if (i > 0) {
+                //everything waiting that binds at least as tight is combined first
+                Operator op = parts.get(i).operator();
+                while (waiting > 0 && precedence(pending[waiting - 1]) >= precedence(op)) {
+                    code[size++] = -1 - pending[--waiting].ordinal();
+                    depth--;
+                }
+                pending[waiting++] = op;
+            }
+            code[size++] = i;
+            max = Math.max(max, ++depth);
+        }
+        while (waiting > 0)
+            code[size++] = -1 - pending[--waiting].ordinal();
+        postfix = code;
+        maxStack = max;
+    }
+
+    private static int precedence(Operator op) {
+        return dots.contains(op) ? 1 : 0;
     }
 
     /**
      * Parse a value part (without operators)
-     * @param iterator The iterator with its position at the first character of the value part
+     * @param iterator The iterator with its position at the first token of the value part, moved to the token after it
      * @param operator The operator preceding this value part
      * @return The parsed value part
      */
-    private ValuePart parsePart(StringIterator iterator, Operator operator) {
+    private ValuePart parsePart(TokenIterator iterator, Operator operator) {
         char type = iterator.current();
         //check for variable name
-        if (type == Character.toUpperCase(type)) {
-            String name = iterator.getVarName(true);
-            return new VarPart(operator, name);
-        }
+        if (iterator.isName())
+            return new VarPart(operator, iterator.getVarName(), -1, -1);
         //check for user input
-        if (type == 'u')
+        if (type == 'u') {
+            iterator.next();
             return new InputPart(operator);
+        }
+        if (!iterator.isLiteral())
+            Lettercode.error("Unknown value type '" + type + "'", iterator);
         String value = iterator.getBetween();
         return switch (type) {
             case 'i' -> new IntPart(operator, StringUtil.getInt(value));
             case 'd' -> new DoublePart(operator, StringUtil.getDouble(value));
             case 's' -> new StringPart(operator, StringUtil.handleStringEscapes(value));
             case 'c' -> new CharPart(operator, StringUtil.handleCharEscapes(value));
-            case 'b' -> new BoolPart(operator, StringUtil.getBoolean(value));
-            default -> {
-                Lettercode.error("Unknown value type '" + type + "'", iterator);
-                yield null;
-            }
+            default -> new BoolPart(operator, StringUtil.getBoolean(value));
         };
     }
 
     /**
-     * Evaluates this value
+     * Writes the parsed value parts in the binary program format
+     * @param writer The writer
+     */
+    public void write(ProgramWriter writer) {
+        writer.writeIndex(index);
+        writer.writeInt(parts.size());
+        for (ValuePart part : parts) {
+            //the type and the operator share one byte
+            writer.writeByte(part.type().ordinal() << 4 | part.operator().ordinal());
+            switch (part) {
+                case IntPart p -> writer.writeInt(p.value);
+                case DoublePart p -> writer.writeDouble(p.value);
+                case StringPart p -> writer.writeString(p.value());
+                case CharPart p -> writer.writeChar(p.value);
+                case BoolPart p -> writer.writeBoolean(p.value);
+                case VarPart p -> writer.writeString(p.name);
+                default -> {}
+            }
+        }
+    }
+
+    private static final Type[] types = Type.values();
+    private static final Operator[] operators = Operator.values();
+
+    /**
+     * Reads the value parts from the binary program format
+     * @param reader The reader with its position at the value
+     */
+    public void read(ProgramReader reader) {
+        index = reader.readIndex();
+        int size = reader.readInt();
+        for (int i = 0; i < size; i++) {
+            int header = reader.readByte();
+            Type type = types[header >> 4];
+            Operator operator = operators[header & 0xF];
+            parts.add(switch (type) {
+                case INT -> new IntPart(operator, reader.readInt());
+                case DOUBLE -> new DoublePart(operator, reader.readDouble());
+                case STRING -> new StringPart(operator, reader.readString());
+                case CHAR -> new CharPart(operator, reader.readChar());
+                case BOOLEAN -> new BoolPart(operator, reader.readBoolean());
+                case VAR -> new VarPart(operator, reader.readString(), -1, -1);
+                case INPUT -> new InputPart(operator);
+                case UNKNOWN -> new UnknownPart(operator);
+            });
+        }
+        compile();
+    }
+
+    /**
+     * Binds the variable parts of this value to their slots
+     * @param resolver The resolver with the scopes at the position of this value
+     */
+    public void resolve(Resolver resolver) {
+        for (int i = 0; i < parts.size(); i++) {
+            if (parts.get(i) instanceof VarPart v) {
+                Resolver.Slot slot = resolver.lookup(v.name, index);
+                parts.set(i, new VarPart(v.operator, v.name, slot.depth(), slot.index()));
+            }
+        }
+    }
+
+    /**
+     * Evaluates this value<br>
+     * Never changes the parts of this value, so values held by instructions can be evaluated by several executions at once
+     * @param context The state of the running program
      * @return The evaluated value as a new instance or itself if already evaluated
      */
-    public Value evaluate() {
+    public Value evaluate(ExecutionContext context) {
         if (evaluated)
             return this;
-        //evaluate a cloned value to allow for multiple evaluations with changed variable contents
-        Value v = clone();
-        //first evaluate mult/div, then add/sub
-        evaluate(v.parts, dots);
-        evaluate(v.parts, lines);
-        v.evaluated = true;
-        return v;
+        //skip the generic evaluation while the parts still have the types this value was specialized for
+        switch (specialized.kind) {
+            case INT, DOUBLE -> {
+                Type type = specializedType(context);
+                if (type == Type.INT)
+                    return of(new IntPart(Operator.NONE, evaluateInt(context)));
+                if (type == Type.DOUBLE)
+                    return of(new DoublePart(Operator.NONE, evaluateDouble(context)));
+            }
+            case UNINITIALIZED -> {
+                Value v = evaluateGeneric(context);
+                specialize(context);
+                return v;
+            }
+        }
+        return evaluateGeneric(context);
     }
 
-    private static final List<Operator> dots = List.of(Operator.TIMES, Operator.DIVIDE, Operator.MODULO);
-    private static final List<Operator> lines = List.of(Operator.PLUS, Operator.MINUS);
-
-    /**
-     * Evaluates operations of the specified operator types
-     * @param parts The list of value parts
-     * @param operators The allowed operators
-     */
-    private void evaluate(List<ValuePart> parts, List<Operator> operators) {
-        for (int i = 1; i < parts.size(); i++) {
-            ValuePart part = parts.get(i);
-            ValuePart before = parts.get(i - 1);
-            if (!operators.contains(part.operator()) || part.operator() == Operator.NONE)
-                continue;
-            Couple<Type, String> combined = combine(partToCouple(before), partToCouple(part), part.operator());
-            //set the new part as the first and remove the second
-            parts.set(i - 1, constructPart(combined.first(), combined.second(), before.operator()));
-            parts.remove(i);
+    /**
+     * Evaluates this value without any specialization, running the postfix on the operand stack of the execution
+     * @param context The state of the running program
+     * @return The evaluated value as a new instance
+     */
+    private Value evaluateGeneric(ExecutionContext context) {
+        OperandStack stack = context.getStack();
+        stack.ensure(maxStack);
+        int top = -1;
+        for (int entry : postfix) {
+            if (entry >= 0) {
+                stack.load(++top, parts.get(entry), context);
+            } else {
+                stack.combine(top - 1, top, operators[-1 - entry]);
+                top--;
+            }
         }
+        return of(stack.part(0));
     }
 
     /**
-     * Combines two values into one using the specified operator
-     * @param in The base value
-     * @param mod The modifier value
-     * @param op The operator for changing the value
-     * @return The combined value, or the modifier value if in is null
-     */
-    private Couple<Type, String> combine(Couple<Type, String> in, Couple<Type, String> mod, Operator op) {
-        if (in == null)
-            return mod;
-        //type of the base value
-        Type cType = in.first();
-        //actual value of the base value
-        String current = in.second();
-        Type vType = mod.first();
-        String value = mod.second();
-        //check all possibilities for combining two value types
-        switch (cType) {
-            //base value is empty
-            case UNKNOWN -> {
-                current = value;
-                cType = vType;
-            }
-            case INT -> {
-                switch (vType) {
-                    case INT -> current = String.valueOf((int)arithmetic(current, value, op));
-                    case DOUBLE -> {
-                        current = String.valueOf(arithmetic(current, value, op));
-                        cType = Type.DOUBLE;
-                    }
-                    //treat character as its codepoint (int)
-                    case CHAR -> current = String.valueOf((int)arithmetic(current, String.valueOf((int)value.charAt(0)), op));
-                    case BOOLEAN -> {
-                        value = prepBool(value);
-                        current = String.valueOf((int)arithmetic(current, value, op));
-                    }
-                    case STRING -> {
-                        if (op != Operator.PLUS)
-                            Lettercode.error("Unsupported operation for integer and string: " + op.name());
-                        current += value;
-                        cType = Type.STRING;
-                    }
-                }
+     * Picks the specialization of this value from the types its parts have on the first evaluation<br>
+     * Only values whose parts are all ints, all doubles, or two parts mixing ints and doubles are specialized
+     * (more mixed parts would combine some ints as ints first)
+     */
+    private void specialize(ExecutionContext context) {
+        specialized = GENERIC;
+        Type[] types = new Type[parts.size()];
+        boolean isDouble = false, isInt = false;
+        for (int i = 0; i < parts.size(); i++) {
+            //user input can't be resolved just to look at its type
+            if (parts.get(i).type() == Type.INPUT)
+                return;
+            Type type = typeOf(parts.get(i), context);
+            if (type != Type.INT && type != Type.DOUBLE)
+                return;
+            isDouble |= type == Type.DOUBLE;
+            isInt |= type == Type.INT;
+            types[i] = type;
+        }
+        if (isDouble && isInt && parts.size() > 2)
+            return;
+        specialized = new Specialized(isDouble ? Specialization.DOUBLE : Specialization.INT, types, false);
+    }
+
+    /**
+     * Specializes this value before running with the types the type inference found for its parts (see TypeInference)<br>
+     * Picks the same specialization as the first evaluation would, but the types of the parts are never checked while running.
+     * Values with a part that only has a type while running are specialized on their first evaluation as usual
+     * @param types The types of the parts, INPUT for a part that only has a type while running
+     * @return The specialization, UNINITIALIZED if it is left to the first evaluation
+     */
+    Specialization specialize(Type[] types) {
+        boolean isDouble = false, isInt = false, numbers = true;
+        for (Type type : types) {
+            if (type == Type.INPUT) {
+                specialized = NOT_SPECIALIZED;
+                return Specialization.UNINITIALIZED;
             }
-            case DOUBLE -> {
-                switch (vType) {
-                    case INT, DOUBLE -> current = String.valueOf(arithmetic(current, value, op));
-                    //treat character as its codepoint (int)
-                    case CHAR -> current = String.valueOf(arithmetic(current, String.valueOf((int)value.charAt(0)), op));
-                    case BOOLEAN -> {
-                        value = prepBool(value);
-                        current = String.valueOf(arithmetic(current, value, op));
-                    }
-                    case STRING -> {
-                        if (op != Operator.PLUS)
-                            Lettercode.error("Unsupported operation for double and string: " + op.name());
-                        current += value;
-                        cType = Type.STRING;
-                    }
-                }
+            isDouble |= type == Type.DOUBLE;
+            isInt |= type == Type.INT;
+            numbers &= type == Type.INT || type == Type.DOUBLE;
+        }
+        if (!numbers || (isDouble && isInt && types.length > 2)) {
+            specialized = GENERIC;
+            return Specialization.GENERIC;
+        }
+        specialized = new Specialized(isDouble ? Specialization.DOUBLE : Specialization.INT, types, true);
+        return specialized.kind;
+    }
+
+    /**
+     * Checks whether the parts still have the types this value was specialized for (specializes it if that didn't happen yet)<br>
+     * Falls back to the generic evaluation for good if they don't (a variable changed its type)
+     * @param context The state of the running program
+     * @return INT or DOUBLE if this value can be evaluated with {@link #evaluateInt} or {@link #evaluateDouble}, null otherwise
+     */
+    public Type specializedType(ExecutionContext context) {
+        if (specialized.kind == Specialization.UNINITIALIZED)
+            specialize(context);
+        Specialized s = specialized;
+        if (s.kind != Specialization.INT && s.kind != Specialization.DOUBLE)
+            return null;
+        //the type inference proved the types already
+        if (s.proven)
+            return s.kind == Specialization.INT ? Type.INT : Type.DOUBLE;
+        for (int i = 0; i < parts.size(); i++) {
+            if (typeOf(parts.get(i), context) != s.types[i]) {
+                specialized = GENERIC;
+                return null;
             }
-            case CHAR -> {
-                switch (vType) {
-                    case INT -> current = String.valueOf((char)((int)arithmetic(String.valueOf((int)value.charAt(0)), value, op))); //combine integer with codepoint of character -> becomes new character
-                    case DOUBLE -> Lettercode.error("Cannot combine a character with a double");
-                    case CHAR, STRING -> {
-                        if (op != Operator.PLUS)
-                            Lettercode.error("Unsupported operation for character and " + (vType == Type.CHAR ? "character: " : "string: ") + op.name());
-                        current += value;
-                        cType = Type.STRING;
-                    }
-                    case BOOLEAN -> Lettercode.error("Cannot combine a character with a boolean");
-                }
+        }
+        return s.kind == Specialization.INT ? Type.INT : Type.DOUBLE;
+    }
+
+    /**
+     * Evaluates this value with int arithmetic (only valid right after {@link #specializedType} returned INT)
+     * @param context The state of the running program
+     * @return The result
+     */
+    public int evaluateInt(ExecutionContext context) {
+        if (parts.size() <= 2) {
+            int result = intOf(parts.getFirst(), context);
+            if (parts.size() == 2)
+                result = arithmetic(result, intOf(parts.get(1), context), parts.get(1).operator());
+            return result;
+        }
+        OperandStack stack = context.getStack();
+        stack.ensure(maxStack);
+        int[] ints = stack.ints;
+        int top = -1;
+        for (int entry : postfix) {
+            if (entry >= 0) {
+                ints[++top] = intOf(parts.get(entry), context);
+            } else {
+                ints[top - 1] = arithmetic(ints[top - 1], ints[top], operators[-1 - entry]);
+                top--;
             }
-            case BOOLEAN -> {
-                switch (vType) {
-                    case INT -> {
-                        current = String.valueOf((int)arithmetic(prepBool(current), value, op));
-                        cType = Type.INT;
-                    }
-                    case DOUBLE -> {
-                        current = String.valueOf(arithmetic(prepBool(current), value, op));
-                        cType = Type.DOUBLE;
-                    }
-                    case CHAR -> Lettercode.error("Cannot combine a boolean with a character");
-                    case BOOLEAN -> Lettercode.error("Cannot combine a boolean with another boolean");
-                    case STRING -> {
-                        if (op != Operator.PLUS)
-                            Lettercode.error("Unsupported operation for boolean and string: " + op.name());
-                        current += value;
-                        cType = Type.STRING;
-                    }
-                }
+        }
+        return ints[0];
+    }
+
+    /**
+     * Evaluates this value with double arithmetic (only valid right after {@link #specializedType} returned DOUBLE)
+     * @param context The state of the running program
+     * @return The result
+     */
+    public double evaluateDouble(ExecutionContext context) {
+        if (parts.size() <= 2) {
+            double result = doubleOf(parts.getFirst(), context);
+            if (parts.size() == 2)
+                result = arithmetic(result, doubleOf(parts.get(1), context), parts.get(1).operator());
+            return result;
+        }
+        OperandStack stack = context.getStack();
+        stack.ensure(maxStack);
+        double[] doubles = stack.doubles;
+        int top = -1;
+        for (int entry : postfix) {
+            if (entry >= 0) {
+                doubles[++top] = doubleOf(parts.get(entry), context);
+            } else {
+                doubles[top - 1] = arithmetic(doubles[top - 1], doubles[top], operators[-1 - entry]);
+                top--;
             }
-            case STRING -> {
-                if (op != Operator.PLUS)
-                    Lettercode.error("Unsupported operation for string: " + op.name());
-                current += value;
+        }
+        return doubles[0];
+    }
+
+    /*
+    Read the type and content of resolved parts, variables are read without creating their value
+     */
+    static Type typeOf(ValuePart part, ExecutionContext context) {
+        if (part instanceof VarPart v)
+            return context.getVariables().get(v.depth, v.slot).getType();
+        return part.type();
+    }
+
+    static int intOf(ValuePart part, ExecutionContext context) {
+        if (part instanceof VarPart v)
+            return context.getVariables().get(v.depth, v.slot).getInt();
+        return getInt(part);
+    }
+
+    static double doubleOf(ValuePart part, ExecutionContext context) {
+        if (part instanceof VarPart v)
+            return context.getVariables().get(v.depth, v.slot).getDouble();
+        return getDouble(part);
+    }
+
+    /**
+     * Creates an evaluated value from a single part
+     * @param part The value part
+     * @return The value
+     */
+    static Value of(ValuePart part) {
+        Value v = new Value();
+        v.parts.add(part);
+        v.evaluated = true;
+        return v;
+    }
+
+    private static final List<Operator> dots = List.of(Operator.TIMES, Operator.DIVIDE, Operator.MODULO);
+
+    /**
+     * Translates this value by going through its parts in the order they are evaluated in (the postfix)<br>
+     * Used by everything that handles values outside of the interpreter (the register machine, the compiler and the type inference),
+     * so they combine the parts in exactly the same order
+     * @param operand Translates a part, called for the parts from left to right
+     * @param combiner Combines two translated operands
+     * @return The translation of the whole value
+     * @param <T> The type of the translation
+     */
+    public <T> T translate(Function<ValuePart, T> operand, Combiner<T> combiner) {
+        List<T> stack = new ArrayList<>(maxStack);
+        for (int entry : postfix) {
+            if (entry >= 0) {
+                stack.add(operand.apply(parts.get(entry)));
+            } else {
+                T mod = stack.removeLast();
+                stack.add(combiner.combine(stack.removeLast(), mod, operators[-1 - entry]));
             }
         }
-        return new Couple<>(cType, current);
+        return stack.getFirst();
+    }
+
+    /**
+     * Combines two translated operands of a value with an operator
+     * @param <T> The type of the translation
+     */
+    public interface Combiner<T> {
+        T combine(T in, T mod, Operator op);
+    }
+
+    /**
+     * Combines two resolved value parts into one using the specified operator<br>
+     * Dispatches on the types of both parts and the operator, working on the primitive values directly
+     * @param in The base value part
+     * @param mod The modifier value part
+     * @param op The operator for changing the value
+     * @return The combined value part, keeping the operator of the base value part
+     */
+    static ValuePart combine(ValuePart in, ValuePart mod, Operator op) {
+        Operator keep = in.operator();
+        //empty user input doesn't change anything
+        if (in.type() == Type.UNKNOWN)
+            return withOperator(mod, keep);
+        if (mod.type() == Type.UNKNOWN)
+            return in;
+        //check all possibilities for combining two value types
+        return switch (in.type()) {
+            case INT -> switch (mod.type()) {
+                //treat characters as their codepoint and booleans as 0 or 1
+                case INT, CHAR, BOOLEAN -> new IntPart(keep, arithmetic(getInt(in), getInt(mod), op));
+                case DOUBLE -> new DoublePart(keep, arithmetic(getDouble(in), getDouble(mod), op));
+                default -> concat(in, mod, op, "integer and string");
+            };
+            case DOUBLE -> switch (mod.type()) {
+                case INT, DOUBLE, CHAR, BOOLEAN -> new DoublePart(keep, arithmetic(getDouble(in), getDouble(mod), op));
+                default -> concat(in, mod, op, "double and string");
+            };
+            case CHAR -> switch (mod.type()) {
+                //combine integer with codepoint of character -> becomes new character
+                case INT -> new CharPart(keep, (char)arithmetic(getInt(in), getInt(mod), op));
+                case CHAR -> concat(in, mod, op, "character and character");
+                case STRING -> concat(in, mod, op, "character and string");
+                case DOUBLE -> combineError("Cannot combine a character with a double", in);
+                default -> combineError("Cannot combine a character with a boolean", in);
+            };
+            case BOOLEAN -> switch (mod.type()) {
+                case INT -> new IntPart(keep, arithmetic(getInt(in), getInt(mod), op));
+                case DOUBLE -> new DoublePart(keep, arithmetic(getDouble(in), getDouble(mod), op));
+                case CHAR -> combineError("Cannot combine a boolean with a character", in);
+                case BOOLEAN -> combineError("Cannot combine a boolean with another boolean", in);
+                default -> concat(in, mod, op, "boolean and string");
+            };
+            default -> concat(in, mod, op, "string");
+        };
+    }
+
+    /**
+     * Concatenates two value parts into a string part (the only place strings are produced when combining)
+     * @param in The base value part
+     * @param mod The modifier value part
+     * @param op The operator, has to be plus
+     * @param types The combined types for the error message
+     * @return The concatenated string part
+     */
+    private static ValuePart concat(ValuePart in, ValuePart mod, Operator op, String types) {
+        if (op != Operator.PLUS)
+            Lettercode.error("Unsupported operation for " + types + ": " + op.name());
+        StringPart base = in instanceof StringPart s ? s : new StringPart(in.operator(), in.toString());
+        return base.append(in.operator(), mod);
+    }
+
+    /**
+     * Shortcut for throwing an error when two value parts can't be combined
+     * @param msg The error message
+     * @param in The base value part
+     * @return The base value part (never reached)
+     */
+    private static ValuePart combineError(String msg, ValuePart in) {
+        Lettercode.error(msg);
+        return in;
+    }
+
+    /**
+     * Performs integer arithmetic on two values with a specified operator
+     * @param a The base value
+     * @param b The modifier value
+     * @param op The operator
+     * @return The arithmetic result
+     */
+    static int arithmetic(int a, int b, Operator op) {
+        if (b == 0 && (op == Operator.DIVIDE || op == Operator.MODULO))
+            Lettercode.error("Division by zero");
+        return switch (op) {
+            case PLUS -> a + b;
+            case MINUS -> a - b;
+            case TIMES -> a * b;
+            case DIVIDE -> a / b;
+            case MODULO -> a % b;
+            default -> a;
+        };
     }
 
     /**
      * Performs arithmetic on two values with a specified operator (double precision)
-     * @param first The base value
-     * @param second The modifier value
+     * @param a The base value
+     * @param b The modifier value
      * @param op The operator
-     * @return The arithmetic result as a double
+     * @return The arithmetic result
      */
-    private double arithmetic(String first, String second, Operator op) {
-        double a = Double.parseDouble(first);
-        double b = Double.parseDouble(second);
+    static double arithmetic(double a, double b, Operator op) {
         return switch (op) {
             case PLUS -> a + b;
             case MINUS -> a - b;
@@ -249,114 +575,238 @@ public class Value {
     }
 
     /**
-     * Prepares a boolean value (turns string into numeric representation)<br>
-     * Does not check whether the input value is actually a boolean value
-     * @param in The input string
-     * @return The output string
+     * Returns the integer value of an int, character (codepoint) or boolean (0 or 1) value part
+     * @param part The value part
+     * @return The integer value
      */
-    private String prepBool(String in) {
-        if (in.equals("true"))
-            return "1";
-        if (in.equals("false"))
-            return "0";
-        return in;
+    private static int getInt(ValuePart part) {
+        return switch (part.type()) {
+            case CHAR -> ((CharPart)part).value;
+            case BOOLEAN -> ((BoolPart)part).value ? 1 : 0;
+            default -> ((IntPart)part).value;
+        };
     }
 
     /**
-     * Requests user input and checks its type
-     * @return The input value with its corresponding type
+     * Returns the double value of a numeric, character (codepoint) or boolean (0 or 1) value part
+     * @param part The value part
+     * @return The double value
      */
-    private Couple<Type, String> requestInput() {
-        String in = JOptionPane.showInputDialog(null, "The program asked for input.", "Input", JOptionPane.QUESTION_MESSAGE);
-        if (in.isEmpty())
-            return new Couple<>(Type.UNKNOWN, "");
+    private static double getDouble(ValuePart part) {
+        if (part.type() == Type.DOUBLE)
+            return ((DoublePart)part).value;
+        return getInt(part);
+    }
 
-        //check all possible types in order from most to least specific
-        try {
-            Integer.parseInt(in);
-            return new Couple<>(Type.INT, in);
-        } catch (Exception ignored) {}
+    /**
+     * Returns the given value part with a different operator
+     * @param part The value part
+     * @param op The new operator
+     * @return The value part itself if the operator matches, otherwise a copy with the new operator
+     */
+    static ValuePart withOperator(ValuePart part, Operator op) {
+        if (part.operator() == op)
+            return part;
+        return switch (part.type()) {
+            case INT -> new IntPart(op, ((IntPart)part).value);
+            case DOUBLE -> new DoublePart(op, ((DoublePart)part).value);
+            case BOOLEAN -> new BoolPart(op, ((BoolPart)part).value);
+            case CHAR -> new CharPart(op, ((CharPart)part).value);
+            case STRING -> ((StringPart)part).withOperator(op);
+            case VAR -> {
+                VarPart v = (VarPart)part;
+                yield new VarPart(op, v.name, v.depth, v.slot);
+            }
+            case INPUT -> new InputPart(op);
+            case UNKNOWN -> new UnknownPart(op);
+        };
+    }
 
-        try {
-            Double.parseDouble(in);
-            return new Couple<>(Type.DOUBLE, in);
-        } catch (Exception ignored) {}
+    /**
+     * Creates the value a variable modification evaluates to: the variable followed by the modification value with the operator,
+     * combined the same way as {@link #modify}
+     * @param variable The resolved variable
+     * @param op The operator of the modification
+     * @param value The modification value
+     * @return The combined value
+     */
+    public static Value modification(VarPart variable, Operator op, Value value) {
+        Value v = new Value();
+        v.index = value.index;
+        v.parts.add(withOperator(variable, Operator.NONE));
+        v.parts.add(withOperator(value.parts.getFirst(), op));
+        for (int i = 1; i < value.parts.size(); i++)
+            v.parts.add(value.parts.get(i));
+        v.compile();
+        return v;
+    }
 
-        if (in.length() == 1)
-            return new Couple<>(Type.CHAR, in);
+    /**
+     * Folds the literal parts that are combined before any variable or user input into one part (see Optimizer)<br>
+     * e.g. 4+2*3+A becomes 10+A and A+2*3 becomes A+6, while A+2+3 stays as it is since A could be a string<br>
+     * Literals that fail to combine are left as they are, so the error still happens while running
+     * @param modification The operator a variable modification combines the variable with this value by, null for any other value
+     * @return The number of parts removed
+     */
+    public int fold(Operator modification) {
+        List<ValuePart> folded = new ArrayList<>(parts.size());
+        //fold the literals each mult/div term starts with, the first term continues the variable of a mult/div modification
+        for (int start = 0, end; start < parts.size(); start = end) {
+            end = start + 1;
+            while (end < parts.size() && dots.contains(parts.get(end).operator()))
+                end++;
+            int literals = start;
+            if (start > 0 || modification == null || !dots.contains(modification))
+                while (literals < end && isLiteral(parts.get(literals)))
+                    literals++;
+            ValuePart run = literals - start > 1 ? combineAll(parts.subList(start, literals)) : null;
+            if (run == null) {
+                folded.addAll(parts.subList(start, end));
+            } else {
+                folded.add(run);
+                folded.addAll(parts.subList(literals, end));
+            }
+        }
+        //fold the leading terms that are single literals now, a modification always starts with the variable
+        int literals = 0;
+        if (modification == null)
+            while (literals < folded.size() && isLiteral(folded.get(literals))
+                    && (literals + 1 == folded.size() || !dots.contains(folded.get(literals + 1).operator())))
+                literals++;
+        ValuePart run = literals > 1 ? combineAll(folded.subList(0, literals)) : null;
+        if (run != null) {
+            folded.subList(1, literals).clear();
+            folded.set(0, run);
+        }
 
-        if (in.equals("true") || in.equals("false"))
-            return new Couple<>(Type.BOOLEAN, in);
+        int removed = parts.size() - folded.size();
+        if (removed > 0) {
+            parts = folded;
+            compile();
+        }
+        return removed;
+    }
 
-        return new Couple<>(Type.STRING, in);
+    /**
+     * The ranges of parts that are combined into a result of their own while evaluating (subexpressions with an operator, see Optimizer)<br>
+     * These are the beginnings of mult/div terms and the beginnings of the whole value, e.g. A*B, C*D, A*B+C*D and A*B+C*D+E in A*B+C*D+E
+     * @param modification The operator a variable modification combines the variable with this value by, null for any other value
+     * @return The ranges as {start, end}
+     */
+    List<int[]> subexpressions(Operator modification) {
+        List<int[]> ranges = new ArrayList<>();
+        for (int start = 0, end; start < parts.size(); start = end) {
+            end = start + 1;
+            while (end < parts.size() && dots.contains(parts.get(end).operator()))
+                end++;
+            //the first term continues the variable of a mult/div modification
+            if (start > 0 || modification == null || !dots.contains(modification))
+                for (int e = start + 2; e <= end; e++)
+                    ranges.add(new int[] {start, e});
+            //a modification always starts with the variable
+            if (start > 0 && modification == null)
+                ranges.add(new int[] {0, end});
+        }
+        return ranges;
     }
 
     /**
-     * Converts a value part into a couple with its type and string value (accounts for special types)
-     * @param part The input value part
-     * @return The corresponding type-string-couple (I ship it :3)
+     * Creates a value from a subexpression of this value
+     * @param start The first part of the subexpression
+     * @param end The end of the subexpression (exclusive)
+     * @return The value, its first part without an operator
      */
-    private Couple<Type, String> partToCouple(ValuePart part) {
-        return switch (part.type()) {
-            case INPUT -> requestInput();
-            case VAR -> {
-                String name = ((VarPart)part).name;
-                Variable var = VariableManager.get(name);
-                if (var == null)
-                    Lettercode.error("Unknown variable: " + name);
-                if (!var.getValue().hasEvaluated())
-                    Lettercode.error("Variable has not been evaluated yet? Probably not your fault...");
-                yield partToCouple(var.getValue().parts.getFirst());
-            }
-            default -> new Couple<>(part.type(), part.toString());
-        };
+    Value subvalue(int start, int end) {
+        Value v = new Value();
+        v.index = index;
+        v.parts.add(withOperator(parts.get(start), Operator.NONE));
+        v.parts.addAll(parts.subList(start + 1, end));
+        v.compile();
+        return v;
     }
 
     /**
-     * Shortcut for the method below with the operator set to none
-     * @param type The type of the value part
-     * @param value The value of the value part
-     * @return The constructed value part
+     * Replaces a subexpression of this value by a single part
+     * @param start The first part of the subexpression
+     * @param end The end of the subexpression (exclusive)
+     * @param part The part taking its place (with the operator of its first part)
      */
-    private ValuePart constructPart(Type type, String value) {
-        return constructPart(type, value, Operator.NONE);
+    void replace(int start, int end, ValuePart part) {
+        List<ValuePart> replaced = new ArrayList<>(parts.subList(0, start));
+        replaced.add(withOperator(part, parts.get(start).operator()));
+        replaced.addAll(parts.subList(end, parts.size()));
+        parts = replaced;
+        compile();
+    }
+
+    private static boolean isLiteral(ValuePart part) {
+        return !(part instanceof VarPart || part instanceof InputPart || part instanceof UnknownPart);
     }
 
     /**
-     * Constructs the appropriate value part from the given information
-     * @param type The type of the value part
-     * @param value The value of the value part
-     * @param op The operator of the value part
-     * @return The constructed value part
+     * Combines literal parts from left to right
+     * @param run The parts
+     * @return The combined part with the operator of the first part, null if they can't be combined
      */
-    private ValuePart constructPart(Type type, String value, Operator op) {
-        return switch (type) {
-            case INT -> new IntPart(op, Integer.parseInt(value));
-            case DOUBLE -> new DoublePart(op, Double.parseDouble(value));
-            case BOOLEAN -> new BoolPart(op, value.equals("true") || value.equals("1"));
-            case CHAR -> new CharPart(op, value.charAt(0));
-            case INPUT -> new InputPart(op);
-            case VAR -> new VarPart(op, value);
-            default -> new StringPart(op, value);
-        };
+    private static ValuePart combineAll(List<ValuePart> run) {
+        try {
+            ValuePart result = run.getFirst();
+            for (int i = 1; i < run.size(); i++)
+                result = combine(result, run.get(i), run.get(i).operator());
+            //don't keep the buffer shared with the concatenation
+            return result instanceof StringPart s ? new StringPart(s.operator(), s.value()) : result;
+        } catch (LettercodeException e) {
+            return null;
+        }
     }
 
     /**
      * Modifies this value - combines this value with another and a given operator and evaluates it
      * @param op The combination operator
      * @param value The value to be combined with
+     * @param context The state of the running program
      */
-    public void modify(Operator op, Value value) {
-        evaluated = false;
-        ValuePart first = value.parts.getFirst();
-        first = constructPart(first.type(), first.toString(), op);
-        parts.add(first);
+    public void modify(Operator op, Value value, ExecutionContext context) {
+        //this value stays as it is until the combination is evaluated, so the modification value can use the variable itself
+        Value combined = new Value();
+        combined.parts.addAll(parts);
+        combined.parts.add(withOperator(value.parts.getFirst(), op));
         for (int i = 1; i < value.parts.size(); i++)
-            parts.add(value.parts.get(i));
-        //unfortunate workaround but whatever
-        Value v = evaluate();
-        parts = v.parts;
-        evaluated = true;
+            combined.parts.add(value.parts.get(i));
+        combined.compile();
+        parts = combined.evaluateGeneric(context).parts;
+        postfix = SINGLE;
+        maxStack = 1;
+    }
+
+    /**
+     * @return The value parts in order (read only)
+     */
+    public List<ValuePart> getParts() {
+        return Collections.unmodifiableList(parts);
+    }
+
+    /**
+     * @return The first part of this value, the whole content of an evaluated value
+     */
+    ValuePart first() {
+        return parts.getFirst();
+    }
+
+    /**
+     * @return The only part of this value (a literal, variable or input), null if it has more parts or an operator
+     */
+    public ValuePart single() {
+        if (parts.size() != 1 || parts.getFirst().operator() != Operator.NONE)
+            return null;
+        return parts.getFirst();
+    }
+
+    /**
+     * @return The position of the value in the source code, -1 if unknown
+     */
+    public int getIndex() {
+        return index;
     }
 
     public boolean hasEvaluated() {
@@ -392,42 +842,141 @@ public class Value {
         return parts.getFirst().toString();
     }
 
+    /**
+     * Prints the value to an output sink without turning it into a string first
+     * @param sink The output sink
+     */
+    public void print(OutputSink sink) {
+        switch (parts.getFirst()) {
+            case IntPart p -> sink.println(p.value);
+            case DoublePart p -> sink.println(p.value);
+            case CharPart p -> sink.println(p.value);
+            case BoolPart p -> sink.println(p.value);
+            case ValuePart p -> sink.println(p.toString());
+        }
+    }
+
     /**
      * A value part without operators
      */
-    private interface ValuePart {
+    public interface ValuePart {
         Operator operator();
         Type type();
     }
 
-    private record IntPart(Operator operator, int value) implements ValuePart {
+    public record IntPart(Operator operator, int value) implements ValuePart {
         public Type type() {return Type.INT;}
         public String toString() {return String.valueOf(value);}
     }
-    private record DoublePart(Operator operator, double value) implements ValuePart {
+    public record DoublePart(Operator operator, double value) implements ValuePart {
         public Type type() {return Type.DOUBLE;}
         public String toString() {return String.valueOf(value);}
     }
-    private record StringPart(Operator operator, String value) implements ValuePart {
+    /**
+     * A string value part<br>
+     * Strings built by concatenation are views of an append-only buffer: appending to the view that ends where the buffer ends
+     * extends the buffer in place (views already handed out only see their own length, so they never change),
+     * everything else copies into a new buffer. That makes growing a string variable amortized O(1) per append.
+     * The string itself is only created when needed (printing, comparing, ...)
+     */
+    public static final class StringPart implements ValuePart {
+        private final Operator operator;
+
+        /**
+         * The buffer this part is a view of (its first length characters), null if it's just the string
+         */
+        private final StringBuilder buffer;
+        private final int length;
+
+        /**
+         * The string, created from the buffer the first time it's needed
+         */
+        private String value;
+
+        public StringPart(Operator operator, String value) {
+            this(operator, null, value.length(), value);
+        }
+
+        private StringPart(Operator operator, StringBuilder buffer, int length, String value) {
+            this.operator = operator;
+            this.buffer = buffer;
+            this.length = length;
+            this.value = value;
+        }
+
+        public Operator operator() {return operator;}
         public Type type() {return Type.STRING;}
-        public String toString() {return value;}
+
+        /**
+         * @return The string (flattens the buffer)
+         */
+        public String value() {
+            if (value == null)
+                value = buffer.substring(0, length);
+            return value;
+        }
+
+        public String toString() {return value();}
+
+        /**
+         * @param operator The operator of the copy
+         * @return This part with another operator, sharing the buffer
+         */
+        public StringPart withOperator(Operator operator) {
+            return new StringPart(operator, buffer, length, value);
+        }
+
+        /**
+         * Appends the string representation of another part without flattening this one
+         * @param operator The operator of the result
+         * @param suffix The part to append
+         * @return The concatenated string part
+         */
+        public StringPart append(Operator operator, ValuePart suffix) {
+            StringBuilder b = buffer;
+            //only the view reaching the end of the buffer may extend it, all others need their own buffer
+            if (b == null || b.length() != length) {
+                b = new StringBuilder(Math.max(16, length * 2));
+                if (buffer == null)
+                    b.append(value);
+                else
+                    b.append(buffer, 0, length);
+            }
+            if (suffix instanceof StringPart s && s.buffer != null && s.buffer != b)
+                b.append(s.buffer, 0, s.length);
+            else
+                b.append(suffix.toString());
+            return new StringPart(operator, b, b.length(), null);
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof StringPart s && operator == s.operator && value().equals(s.value());
+        }
+
+        public int hashCode() {
+            return 31 * operator.hashCode() + value().hashCode();
+        }
     }
-    private record CharPart(Operator operator, char value) implements ValuePart {
+    public record CharPart(Operator operator, char value) implements ValuePart {
         public Type type() {return Type.CHAR;}
         public String toString() {return String.valueOf(value);}
     }
-    private record BoolPart(Operator operator, boolean value) implements ValuePart {
+    public record BoolPart(Operator operator, boolean value) implements ValuePart {
         public Type type() {return Type.BOOLEAN;}
         public String toString() {return value ? "true" : "false";}
     }
-    private record VarPart(Operator operator, String name) implements ValuePart {
+    public record VarPart(Operator operator, String name, int depth, int slot) implements ValuePart {
         public Type type() {return Type.VAR;}
         public String toString() {return name;}
     }
-    private record InputPart(Operator operator) implements ValuePart {
+    public record InputPart(Operator operator) implements ValuePart {
         public Type type() {return Type.INPUT;}
         public String toString() {return "";}
     }
+    public record UnknownPart(Operator operator) implements ValuePart {
+        public Type type() {return Type.UNKNOWN;}
+        public String toString() {return "";}
+    }
 
     /**
      * The arithmetic operators
@@ -436,6 +985,15 @@ public class Value {
         NONE, PLUS, MINUS, TIMES, DIVIDE, MODULO
     }
 
+    /**
+     * The states of type specialization used by values and conditions<br>
+     * Starts uninitialized, gets specialized to int or double by the types seen on the first evaluation and
+     * goes back to generic as soon as the types change
+     */
+    public enum Specialization {
+        UNINITIALIZED, INT, DOUBLE, GENERIC
+    }
+
     /**
      * The types a value can be
      */
@@ -452,6 +1010,8 @@ public class Value {
         v.evaluated = evaluated;
         v.parts = new ArrayList<>();
         v.parts.addAll(parts);
+        v.postfix = postfix;
+        v.maxStack = maxStack;
         return v;
     }
 }
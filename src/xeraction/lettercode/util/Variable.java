@@ -1,32 +1,114 @@
 package xeraction.lettercode.util;
 
 /**
- * Represents a variable
+ * Represents a variable slot<br>
+ * Holds the value of whichever variable currently lives in the slot<br>
+ * Ints and doubles changed by compound assignments, pp or mm are kept as primitives and updated in place,
+ * their value is only created again when something needs it
  */
 public class Variable {
     /**
-     * The name of the variable
+     * The value of the variable (null while it's only held as a primitive)
      */
-    private final String name;
+    private Value value;
 
     /**
-     * The value of the variable
+     * INT or DOUBLE if the content is held as a primitive, null if the value is the only content
      */
-    private Value value;
+    private Value.Type primitive;
+    private int intValue;
+    private double doubleValue;
 
-    public Variable(String name) {
-        this.name = name;
-    }
+    public Variable() {}
 
     public void setValue(Value value) {
         this.value = value;
+        primitive = null;
     }
 
     public Value getValue() {
+        if (value == null && primitive != null)
+            value = Value.of(primitive == Value.Type.INT ? new Value.IntPart(Value.Operator.NONE, intValue) : new Value.DoublePart(Value.Operator.NONE, doubleValue));
         return value;
     }
 
-    public String getName() {
-        return name;
+    /**
+     * Sets the content to an int held as a primitive
+     * @param value The int
+     */
+    public void setInt(int value) {
+        this.value = null;
+        primitive = Value.Type.INT;
+        intValue = value;
+    }
+
+    /**
+     * Sets the content to a double held as a primitive
+     * @param value The double
+     */
+    public void setDouble(double value) {
+        this.value = null;
+        primitive = Value.Type.DOUBLE;
+        doubleValue = value;
+    }
+
+    /**
+     * @return The type of the content, without creating its value
+     */
+    public Value.Type getType() {
+        return primitive != null ? primitive : value.getType();
+    }
+
+    /**
+     * @return The content of an int variable, without creating its value
+     */
+    public int getInt() {
+        return primitive != null ? intValue : value.getAsInt();
+    }
+
+    /**
+     * @return The content of an int or double variable as a double, without creating its value
+     */
+    public double getDouble() {
+        if (primitive != null)
+            return primitive == Value.Type.INT ? intValue : doubleValue;
+        return value.getType() == Value.Type.INT ? value.getAsInt() : value.getAsDouble();
+    }
+
+    /**
+     * Combines an int or double variable with an int in place
+     * @param op The operator
+     * @param operand The int to combine the variable with
+     * @return false if the variable is neither an int nor a double, nothing is changed then
+     */
+    public boolean modify(Value.Operator op, int operand) {
+        if (!toPrimitive())
+            return false;
+        if (primitive == Value.Type.INT)
+            intValue = Value.arithmetic(intValue, operand, op);
+        else
+            doubleValue = Value.arithmetic(doubleValue, operand, op);
+        value = null;
+        return true;
+    }
+
+    /**
+     * Switches an int or double variable to being held as a primitive
+     * @return false if the variable is neither an int nor a double
+     */
+    private boolean toPrimitive() {
+        if (primitive != null)
+            return true;
+        if (value == null || !value.hasEvaluated())
+            return false;
+        switch (value.getType()) {
+            case INT -> intValue = value.getAsInt();
+            case DOUBLE -> doubleValue = value.getAsDouble();
+            default -> {
+                return false;
+            }
+        }
+        primitive = value.getType();
+        return true;
     }
 }
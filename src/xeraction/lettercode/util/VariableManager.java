@@ -1,60 +1,108 @@
 package xeraction.lettercode.util;
 
-import java.util.ArrayDeque;
-import java.util.ArrayList;
-import java.util.Deque;
-import java.util.List;
-
 /**
- * Utility class that manages the variables and scopes
+ * Manages the variables and scopes of one execution<br>
+ * Variables are stored in one preallocated frame per scope depth and accessed by the slot the resolver gave them<br>
+ * Only scopes that initialize variables are opened and closed, the resolver knows their depth and size up front
  */
 public class VariableManager {
     /**
-     * All available variables
+     * The variable frames, one for each scope depth
      */
-    private static final List<Variable> variables = new ArrayList<>();
+    private final Variable[][] frames;
 
     /**
-     * The scope structure represented by the variable names on a stack
+     * Whether scope changes and lookups are counted (for the execution event)
      */
-    private static final Deque<List<String>> scopes = new ArrayDeque<>();
+    private final boolean counting;
+    private long scopePushes, scopePops, lookups;
+    private int peakDepth = 0;
+
+    /**
+     * Allocate the frames for a resolved program
+     * @param frameSizes The number of slots for each scope depth
+     */
+    public VariableManager(int[] frameSizes) {
+        this(frameSizes, false);
+    }
+
+    /**
+     * Allocate the frames for a resolved program
+     * @param frameSizes The number of slots for each scope depth
+     * @param counting Whether to count scope changes and lookups
+     */
+    public VariableManager(int[] frameSizes, boolean counting) {
+        this.counting = counting;
+        frames = new Variable[frameSizes.length][];
+        for (int d = 0; d < frameSizes.length; d++) {
+            frames[d] = new Variable[frameSizes[d]];
+            for (int s = 0; s < frameSizes[d]; s++)
+                frames[d][s] = new Variable();
+        }
+    }
 
     /**
-     * Initialize a variable on the top scope
-     * @param v The variable to initialize
+     * Initialize a variable
+     * @param depth The depth of the scope the variable is initialized in
+     * @param slot The slot of the variable
+     * @param value The initial value
      */
-    public static void add(Variable v) {
-        variables.add(v);
-        if (scopes.isEmpty())
-            scopes.push(new ArrayList<>());
-        scopes.getFirst().add(v.getName());
+    public void add(int depth, int slot, Value value) {
+        frames[depth][slot].setValue(value);
     }
 
     /**
      * Access a variable
-     * @param name The variable name
-     * @return The variable corresponding to the name
+     * @param depth The depth of the scope the variable lives in
+     * @param slot The slot of the variable
+     * @return The variable at the coordinate
      */
-    public static Variable get(String name) {
-        for (Variable v : variables)
-            if (v.getName().equals(name))
-                return v;
-        return null;
+    public Variable get(int depth, int slot) {
+        if (counting)
+            lookups++;
+        return frames[depth][slot];
     }
 
     /**
      * Create a new scope (new code body opened)
+     * @param scope The scope given by the resolver
      */
-    public static void pushScope() {
-        scopes.push(new ArrayList<>());
+    public void pushScope(Resolver.Scope scope) {
+        if (counting) {
+            scopePushes++;
+            peakDepth = Math.max(peakDepth, scope.depth());
+        }
     }
 
     /**
-     * Remove the top scope and its variables (code body closed)
+     * Remove the top scope and its variables (code body closed)<br>
+     * Only the slots used by the scope are cleared, the frame may be bigger because of other scopes on the same depth
+     * @param scope The scope given by the resolver
      */
-    public static void popScope() {
-        List<String> popped = scopes.pop();
-        for (String name : popped)
-            variables.removeIf(v -> v.getName().equals(name));
+    public void popScope(Resolver.Scope scope) {
+        Variable[] frame = frames[scope.depth()];
+        for (int s = 0; s < scope.size(); s++)
+            frame[s].setValue(null);
+        if (counting)
+            scopePops++;
+    }
+
+    /*
+    The counts (only if counting)
+     */
+    public long getScopePushes() {
+        return scopePushes;
+    }
+
+    public long getScopePops() {
+        return scopePops;
+    }
+
+    public int getPeakDepth() {
+        return peakDepth;
+    }
+
+    public long getLookups() {
+        return lookups;
     }
 }
@@ -0,0 +1,307 @@
+package xeraction.lettercode.vm;
+
+import xeraction.lettercode.instructions.*;
+import xeraction.lettercode.util.Condition;
+import xeraction.lettercode.util.Couple;
+import xeraction.lettercode.util.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static xeraction.lettercode.vm.Program.*;
+
+/**
+ * Lowers a parsed and resolved program into the flat format of the register machine<br>
+ * Every variable slot gets its own register, the following registers hold the intermediate results of a statement
+ */
+public class Lowering {
+    /**
+     * The opcode stream written so far
+     */
+    private int[] code = new int[256];
+    private int size = 0;
+
+    /**
+     * The position in the source of the instruction or condition each code word was lowered from
+     */
+    private int[] indices = new int[256];
+
+    /**
+     * The position of the instruction or condition being lowered
+     */
+    private int index = -1;
+
+    /*
+    The constant pool
+     */
+    private final List<Value.ValuePart> constants = new ArrayList<>();
+    private final Map<Value.ValuePart, Integer> constantIndices = new HashMap<>();
+
+    /**
+     * The first register of each scope depth
+     */
+    private final int[] frameBases;
+
+    /**
+     * The first register for intermediate results
+     */
+    private final int tempBase;
+
+    /**
+     * The next free register for intermediate results and the highest one used
+     */
+    private int temp, maxTemp;
+
+    private Lowering(int[] frameSizes) {
+        frameBases = new int[frameSizes.length];
+        int base = 0;
+        for (int d = 0; d < frameSizes.length; d++) {
+            frameBases[d] = base;
+            base += frameSizes[d];
+        }
+        tempBase = base;
+        temp = maxTemp = base;
+    }
+
+    /**
+     * Lowers a program
+     * @param instructions The resolved instructions of the program
+     * @param frameSizes The frame sizes given by the resolver
+     * @return The lowered program
+     */
+    public static Program lower(List<Instruction> instructions, int[] frameSizes) {
+        Lowering lowering = new Lowering(frameSizes);
+        lowering.instructions(instructions);
+        lowering.emit(EXIT);
+
+        byte[] types = new byte[lowering.constants.size()];
+        long[] prims = new long[types.length];
+        Object[] refs = new Object[types.length];
+        for (int i = 0; i < types.length; i++) {
+            switch (lowering.constants.get(i)) {
+                case Value.IntPart p -> {
+                    types[i] = INT;
+                    prims[i] = p.value();
+                }
+                case Value.DoublePart p -> {
+                    types[i] = DOUBLE;
+                    prims[i] = Double.doubleToRawLongBits(p.value());
+                }
+                case Value.CharPart p -> {
+                    types[i] = CHAR;
+                    prims[i] = p.value();
+                }
+                case Value.BoolPart p -> {
+                    types[i] = BOOLEAN;
+                    prims[i] = p.value() ? 1 : 0;
+                }
+                case Value.StringPart p -> {
+                    types[i] = STRING;
+                    refs[i] = p;
+                }
+                default -> types[i] = UNKNOWN;
+            }
+        }
+        int[] code = new int[lowering.size];
+        System.arraycopy(lowering.code, 0, code, 0, lowering.size);
+        int[] indices = new int[lowering.size];
+        System.arraycopy(lowering.indices, 0, indices, 0, lowering.size);
+        return new Program(code, types, prims, refs, lowering.maxTemp, indices);
+    }
+
+    private void instructions(List<Instruction> instructions) {
+        for (Instruction i : instructions) {
+            instruction(i);
+            //intermediate results never outlive their statement
+            temp = tempBase;
+        }
+    }
+
+    private void instruction(Instruction instruction) {
+        int outer = index;
+        index = instruction.getIndex();
+        switch (instruction) {
+            case VarInitInstruction inst -> {
+                int result = value(inst.getValue());
+                emit(MOVE, register(inst.getDepth(), inst.getSlot()), result);
+            }
+            case VarModifyInstruction inst -> {
+                int register = register(inst.getDepth(), inst.getSlot());
+                //the variable followed by the modification value with the operator, or the value itself when reassigning
+                int result = value(inst.getModification());
+                if (result != register)
+                    emit(MOVE, register, result);
+            }
+            case PrintInstruction inst -> emit(PRINT, value(inst.getValue()));
+            case IfInstruction inst -> {
+                int jumpElse = jumpFalse(check(inst.getCondition()));
+                instructions(inst.getIfInstructions());
+                if (inst.hasElse()) {
+                    emit(JUMP, -1);
+                    int jumpEnd = size - 1;
+                    code[jumpElse] = size;
+                    instructions(inst.getElseInstructions());
+                    code[jumpEnd] = size;
+                } else {
+                    code[jumpElse] = size;
+                }
+            }
+            case WhileInstruction inst -> {
+                int start = size;
+                int jumpEnd = jumpFalse(check(inst.getCondition()));
+                instructions(inst.getInstructions());
+                emit(JUMP, start);
+                code[jumpEnd] = size;
+            }
+            case ForInstruction inst -> {
+                instructions(inst.getTopStart());
+                int start = size;
+                int jumpEnd = jumpFalse(check(inst.getTopCondition()));
+                instructions(inst.getLoop());
+                instructions(inst.getTopLoop());
+                emit(JUMP, start);
+                code[jumpEnd] = size;
+            }
+            case ExitInstruction inst -> emit(EXIT);
+            //the register machine runs the instructions a fused instruction replaces
+            case FusedInstruction inst -> instructions(inst.unfused());
+            default -> throw new IllegalArgumentException("Unknown instruction " + instruction.getClass().getSimpleName());
+        }
+        index = outer;
+    }
+
+    /**
+     * Lowers the condition of an if or a loop, errors in it are placed at the condition
+     * @param condition The condition
+     * @return The register holding the (boolean) result
+     */
+    private int check(Condition condition) {
+        int outer = index;
+        index = condition.getIndex();
+        int result = condition(condition);
+        index = outer;
+        return result;
+    }
+
+    /**
+     * Emits a jump that is taken when a condition is false
+     * @param condition The register holding the condition result
+     * @return The position of the jump target in the code, to be patched
+     */
+    private int jumpFalse(int condition) {
+        emit(JUMP_FALSE, condition, -1);
+        temp = tempBase;
+        return size - 1;
+    }
+
+    /**
+     * Lowers a condition
+     * @param condition The condition
+     * @return The register holding the (boolean) result
+     */
+    private int condition(Condition condition) {
+        if (condition.isChain()) {
+            //the part conditions are chained together from left to right, and and or skip the next one once the result is decided
+            List<Couple<Condition.ChainOperator, Condition>> chain = condition.getChain();
+            int top = condition(chain.getFirst().second());
+            for (int i = 1; i < chain.size(); i++) {
+                Condition.ChainOperator op = chain.get(i).first();
+                if (op == Condition.ChainOperator.XOR) {
+                    int next = condition(chain.get(i).second());
+                    int dst = newTemp();
+                    emit(LOGIC, op.ordinal(), dst, top, next);
+                    top = dst;
+                    continue;
+                }
+                emit(op == Condition.ChainOperator.AND ? JUMP_FALSE : JUMP_TRUE, top, -1);
+                int skip = size - 1;
+                emit(MOVE, top, condition(chain.get(i).second()));
+                code[skip] = size;
+            }
+            return top;
+        }
+        int first = value(condition.getFirst());
+        int second = value(condition.getSecond());
+        int dst = newTemp();
+        emit(COMPARE, condition.getOperator().ordinal(), dst, first, second);
+        return dst;
+    }
+
+    /**
+     * Lowers a value, loading and combining its parts in the order Value.evaluate uses
+     * @param value The value
+     * @return The register holding the result
+     */
+    private int value(Value value) {
+        return value.translate(this::part, (in, mod, op) -> {
+            int dst = newTemp();
+            emit(COMBINE, op.ordinal(), dst, in, mod);
+            return dst;
+        });
+    }
+
+    /**
+     * Lowers a single value part
+     * @param part The value part
+     * @return The register holding the value part
+     */
+    private int part(Value.ValuePart part) {
+        return switch (part) {
+            case Value.VarPart v -> register(v.depth(), v.slot());
+            case Value.InputPart i -> {
+                int dst = newTemp();
+                emit(INPUT, dst);
+                yield dst;
+            }
+            default -> {
+                int dst = newTemp();
+                emit(CONST, dst, constant(part));
+                yield dst;
+            }
+        };
+    }
+
+    private int constant(Value.ValuePart part) {
+        //the operator doesn't matter for the constant itself
+        Value.ValuePart key = switch (part) {
+            case Value.IntPart p -> new Value.IntPart(Value.Operator.NONE, p.value());
+            case Value.DoublePart p -> new Value.DoublePart(Value.Operator.NONE, p.value());
+            case Value.CharPart p -> new Value.CharPart(Value.Operator.NONE, p.value());
+            case Value.BoolPart p -> new Value.BoolPart(Value.Operator.NONE, p.value());
+            case Value.StringPart p -> new Value.StringPart(Value.Operator.NONE, p.value());
+            default -> part;
+        };
+        return constantIndices.computeIfAbsent(key, k -> {
+            constants.add(k);
+            return constants.size() - 1;
+        });
+    }
+
+    private int register(int depth, int slot) {
+        return frameBases[depth] + slot;
+    }
+
+    private int newTemp() {
+        int t = temp++;
+        maxTemp = Math.max(maxTemp, temp);
+        return t;
+    }
+
+    private void emit(int... words) {
+        if (size + words.length > code.length) {
+            int length = Math.max(code.length * 2, size + words.length);
+            int[] bigger = new int[length];
+            System.arraycopy(code, 0, bigger, 0, size);
+            code = bigger;
+            bigger = new int[length];
+            System.arraycopy(indices, 0, bigger, 0, size);
+            indices = bigger;
+        }
+        System.arraycopy(words, 0, code, size, words.length);
+        Arrays.fill(indices, size, size + words.length, index);
+        size += words.length;
+    }
+}
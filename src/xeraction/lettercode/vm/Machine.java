@@ -0,0 +1,317 @@
+package xeraction.lettercode.vm;
+
+import xeraction.lettercode.Lettercode;
+import xeraction.lettercode.LettercodeException;
+import xeraction.lettercode.util.Condition;
+import xeraction.lettercode.util.Input;
+import xeraction.lettercode.util.InputProvider;
+import xeraction.lettercode.util.OutputSink;
+import xeraction.lettercode.util.Value;
+
+import static xeraction.lettercode.vm.Program.*;
+
+/**
+ * The register machine executing lowered programs<br>
+ * Every register has a type tag and holds its content either as a primitive (ints, characters, booleans, double bits) or a string part
+ */
+public class Machine {
+    private static final Value.Operator[] operators = Value.Operator.values();
+    private static final Condition.CondOperator[] condOperators = Condition.CondOperator.values();
+
+    private final Program program;
+
+    /**
+     * Where the user input comes from and where the output goes
+     */
+    private final InputProvider input;
+    private final OutputSink output;
+
+    /*
+    The register file
+     */
+    private final byte[] types;
+    private final long[] prims;
+    private final Object[] refs;
+
+    public Machine(Program program, InputProvider input, OutputSink output) {
+        this.program = program;
+        this.input = input;
+        this.output = output;
+        types = new byte[program.registers()];
+        prims = new long[program.registers()];
+        refs = new Object[program.registers()];
+    }
+
+    /**
+     * Runs the program until it reaches an exit<br>
+     * Errors without a position get the position of the instruction or condition the failing code was lowered from
+     */
+    public void run() {
+        int[] code = program.code();
+        int pc = 0;
+        try {
+            while (true) {
+                switch (code[pc]) {
+                    case CONST -> {
+                        int dst = code[pc + 1], k = code[pc + 2];
+                        types[dst] = program.constTypes()[k];
+                        prims[dst] = program.constPrims()[k];
+                        refs[dst] = program.constRefs()[k];
+                        pc += 3;
+                    }
+                    case MOVE -> {
+                        int dst = code[pc + 1], src = code[pc + 2];
+                        types[dst] = types[src];
+                        prims[dst] = prims[src];
+                        refs[dst] = refs[src];
+                        pc += 3;
+                    }
+                    case INPUT -> {
+                        input(code[pc + 1]);
+                        pc += 2;
+                    }
+                    case COMBINE -> {
+                        int dst = code[pc + 2], a = code[pc + 3], b = code[pc + 4];
+                        //the most common case first
+                        if (types[a] == INT && types[b] == INT)
+                            setInt(dst, INT, arithmetic((int)prims[a], (int)prims[b], operators[code[pc + 1]]));
+                        else
+                            combine(operators[code[pc + 1]], dst, a, b);
+                        pc += 5;
+                    }
+                    case COMPARE -> {
+                        setInt(code[pc + 2], BOOLEAN, compare(condOperators[code[pc + 1]], code[pc + 3], code[pc + 4]) ? 1 : 0);
+                        pc += 5;
+                    }
+                    case LOGIC -> {
+                        boolean a = prims[code[pc + 3]] != 0, b = prims[code[pc + 4]] != 0;
+                        boolean result = switch (code[pc + 1]) {
+                            case 0 -> a && b;
+                            case 1 -> a || b;
+                            default -> a ^ b;
+                        };
+                        setInt(code[pc + 2], BOOLEAN, result ? 1 : 0);
+                        pc += 5;
+                    }
+                    case JUMP -> pc = code[pc + 1];
+                    case JUMP_FALSE -> pc = prims[code[pc + 1]] == 0 ? code[pc + 2] : pc + 3;
+                    case JUMP_TRUE -> pc = prims[code[pc + 1]] != 0 ? code[pc + 2] : pc + 3;
+                    case PRINT -> {
+                        print(code[pc + 1]);
+                        pc += 2;
+                    }
+                    case EXIT -> {
+                        return;
+                    }
+                    default -> Lettercode.error("Invalid opcode " + code[pc] + " at " + pc);
+                }
+            }
+        } catch (LettercodeException e) {
+            throw e.at(program.indices()[pc]);
+        }
+    }
+
+    /**
+     * Combines two registers into one using the specified operator, following the rules of Value.combine
+     * @param op The operator
+     * @param dst The destination register
+     * @param a The base register
+     * @param b The modifier register
+     */
+    private void combine(Value.Operator op, int dst, int a, int b) {
+        byte ta = types[a], tb = types[b];
+        //empty user input doesn't change anything
+        if (ta == UNKNOWN) {
+            copy(dst, b);
+            return;
+        }
+        if (tb == UNKNOWN) {
+            copy(dst, a);
+            return;
+        }
+        switch (ta) {
+            case INT -> {
+                switch (tb) {
+                    case INT, CHAR, BOOLEAN -> setInt(dst, INT, arithmetic((int)prims[a], (int)prims[b], op));
+                    case DOUBLE -> setDouble(dst, arithmetic(getDouble(a), getDouble(b), op));
+                    default -> concat(op, dst, a, b, "integer and string");
+                }
+            }
+            case DOUBLE -> {
+                if (tb == STRING)
+                    concat(op, dst, a, b, "double and string");
+                else
+                    setDouble(dst, arithmetic(getDouble(a), getDouble(b), op));
+            }
+            case CHAR -> {
+                switch (tb) {
+                    case INT -> setInt(dst, CHAR, (char)arithmetic((int)prims[a], (int)prims[b], op));
+                    case CHAR -> concat(op, dst, a, b, "character and character");
+                    case STRING -> concat(op, dst, a, b, "character and string");
+                    case DOUBLE -> Lettercode.error("Cannot combine a character with a double");
+                    default -> Lettercode.error("Cannot combine a character with a boolean");
+                }
+            }
+            case BOOLEAN -> {
+                switch (tb) {
+                    case INT -> setInt(dst, INT, arithmetic((int)prims[a], (int)prims[b], op));
+                    case DOUBLE -> setDouble(dst, arithmetic(getDouble(a), getDouble(b), op));
+                    case CHAR -> Lettercode.error("Cannot combine a boolean with a character");
+                    case BOOLEAN -> Lettercode.error("Cannot combine a boolean with another boolean");
+                    default -> concat(op, dst, a, b, "boolean and string");
+                }
+            }
+            default -> concat(op, dst, a, b, "string");
+        }
+    }
+
+    private void concat(Value.Operator op, int dst, int a, int b, String types) {
+        if (op != Value.Operator.PLUS)
+            Lettercode.error("Unsupported operation for " + types + ": " + op.name());
+        //string registers hold string parts, so growing a string register appends in place
+        Value.StringPart base = this.types[a] == STRING ? (Value.StringPart)refs[a] : new Value.StringPart(Value.Operator.NONE, toString(a));
+        Value.StringPart suffix = this.types[b] == STRING ? (Value.StringPart)refs[b] : new Value.StringPart(Value.Operator.NONE, toString(b));
+        refs[dst] = base.append(Value.Operator.NONE, suffix);
+        this.types[dst] = STRING;
+    }
+
+    private int arithmetic(int a, int b, Value.Operator op) {
+        if (b == 0 && (op == Value.Operator.DIVIDE || op == Value.Operator.MODULO))
+            Lettercode.error("Division by zero");
+        return switch (op) {
+            case PLUS -> a + b;
+            case MINUS -> a - b;
+            case TIMES -> a * b;
+            case DIVIDE -> a / b;
+            case MODULO -> a % b;
+            default -> a;
+        };
+    }
+
+    private double arithmetic(double a, double b, Value.Operator op) {
+        return switch (op) {
+            case PLUS -> a + b;
+            case MINUS -> a - b;
+            case TIMES -> a * b;
+            case DIVIDE -> a / b;
+            case MODULO -> a % b;
+            default -> a;
+        };
+    }
+
+    /**
+     * Compares two registers, following the rules of Condition.evaluate
+     * @param op The conditional operator
+     * @param a The first register
+     * @param b The second register
+     * @return The result of the comparison
+     */
+    private boolean compare(Condition.CondOperator op, int a, int b) {
+        byte ta = types[a], tb = types[b];
+        //make sure the compared types are compatible (can compare everything except string and other types)
+        if (ta != tb && (ta == STRING || tb == STRING))
+            Lettercode.error("Cannot compare these variable types: " + typeName(ta) + " and " + typeName(tb));
+        if (ta == UNKNOWN || tb == UNKNOWN)
+            return false;
+        if (ta == STRING) {
+            boolean equal = ((Value.StringPart)refs[a]).value().equals(((Value.StringPart)refs[b]).value());
+            switch (op) {
+                case EQUAL -> {return equal;}
+                case NEQUAL -> {return !equal;}
+                default -> Lettercode.error("You can only compare two strings for equality!");
+            }
+        }
+        double val1 = getDouble(a);
+        double val2 = getDouble(b);
+        return switch (op) {
+            case EQUAL -> val1 == val2;
+            case NEQUAL -> val1 != val2;
+            case LESS -> val1 < val2;
+            case LEQUAL -> val1 <= val2;
+            case GREATER -> val1 > val2;
+            case GREQUAL -> val1 >= val2;
+            case NONE -> false;
+        };
+    }
+
+    /**
+     * Requests user input and stores it with its type
+     * @param dst The register to store the input in
+     */
+    private void input(int dst) {
+        switch (Input.next(input, output)) {
+            case Value.IntPart p -> setInt(dst, INT, p.value());
+            case Value.DoublePart p -> setDouble(dst, p.value());
+            case Value.CharPart p -> setInt(dst, CHAR, p.value());
+            case Value.BoolPart p -> setInt(dst, BOOLEAN, p.value() ? 1 : 0);
+            case Value.StringPart p -> {
+                types[dst] = STRING;
+                refs[dst] = p;
+            }
+            default -> types[dst] = UNKNOWN;
+        }
+    }
+
+    private void setInt(int dst, byte type, int value) {
+        types[dst] = type;
+        prims[dst] = value;
+    }
+
+    private void setDouble(int dst, double value) {
+        types[dst] = DOUBLE;
+        prims[dst] = Double.doubleToRawLongBits(value);
+    }
+
+    private void copy(int dst, int src) {
+        types[dst] = types[src];
+        prims[dst] = prims[src];
+        refs[dst] = refs[src];
+    }
+
+    /**
+     * Returns the content of a numeric, character (codepoint) or boolean (0 or 1) register as a double
+     */
+    private double getDouble(int register) {
+        if (types[register] == DOUBLE)
+            return Double.longBitsToDouble(prims[register]);
+        return (int)prims[register];
+    }
+
+    /**
+     * Prints a register to the output sink, the same way values are printed
+     */
+    private void print(int register) {
+        switch (types[register]) {
+            case INT -> output.println((int)prims[register]);
+            case DOUBLE -> output.println(Double.longBitsToDouble(prims[register]));
+            case CHAR -> output.println((char)prims[register]);
+            case BOOLEAN -> output.println(prims[register] != 0);
+            default -> output.println(toString(register));
+        }
+    }
+
+    /**
+     * Returns the string representation of a register, the same way value parts are printed
+     */
+    private String toString(int register) {
+        return switch (types[register]) {
+            case INT -> String.valueOf((int)prims[register]);
+            case DOUBLE -> String.valueOf(Double.longBitsToDouble(prims[register]));
+            case CHAR -> String.valueOf((char)prims[register]);
+            case BOOLEAN -> prims[register] != 0 ? "true" : "false";
+            case STRING -> ((Value.StringPart)refs[register]).value();
+            default -> "";
+        };
+    }
+
+    private static String typeName(byte type) {
+        return switch (type) {
+            case STRING -> "STRING";
+            case CHAR -> "CHAR";
+            case INT -> "INT";
+            case DOUBLE -> "DOUBLE";
+            case BOOLEAN -> "BOOLEAN";
+            default -> "UNKNOWN";
+        };
+    }
+}
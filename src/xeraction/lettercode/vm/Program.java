@@ -0,0 +1,45 @@
+package xeraction.lettercode.vm;
+
+/**
+ * A program lowered for the register machine<br>
+ * The code is a flat stream of opcodes, each followed by its operands (register indices, constant indices or jump targets)<br>
+ * Constants are stored split by their representation, just like the registers of the machine
+ * @param code The opcode stream
+ * @param constTypes The type tag of each constant
+ * @param constPrims The primitive content of each constant (int, character, boolean or double bits)
+ * @param constRefs The string content of each constant (as string parts)
+ * @param registers The number of registers the program needs
+ * @param indices The position in the source of the instruction or condition each code word was lowered from
+ */
+public record Program(int[] code, byte[] constTypes, long[] constPrims, Object[] constRefs, int registers, int[] indices) {
+    /*
+    The opcodes with their operands
+     */
+    /** CONST dst, constant */
+    public static final int CONST = 0;
+    /** MOVE dst, src */
+    public static final int MOVE = 1;
+    /** INPUT dst */
+    public static final int INPUT = 2;
+    /** COMBINE operator, dst, a, b */
+    public static final int COMBINE = 3;
+    /** COMPARE operator, dst, a, b */
+    public static final int COMPARE = 4;
+    /** LOGIC operator, dst, a, b */
+    public static final int LOGIC = 5;
+    /** JUMP target */
+    public static final int JUMP = 6;
+    /** JUMP_FALSE condition, target */
+    public static final int JUMP_FALSE = 7;
+    /** PRINT src */
+    public static final int PRINT = 8;
+    /** EXIT */
+    public static final int EXIT = 9;
+    /** JUMP_TRUE condition, target */
+    public static final int JUMP_TRUE = 10;
+
+    /*
+    The type tags of registers and constants
+     */
+    public static final byte STRING = 0, CHAR = 1, INT = 2, DOUBLE = 3, BOOLEAN = 4, UNKNOWN = 5;
+}
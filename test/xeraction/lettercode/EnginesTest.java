@@ -0,0 +1,139 @@
+package xeraction.lettercode;
+
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+import xeraction.lettercode.compiler.Compiler;
+import xeraction.lettercode.util.BufferedOutput;
+import xeraction.lettercode.util.InputProvider;
+import xeraction.lettercode.util.ListInput;
+import xeraction.lettercode.util.OutputSink;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs programs on every engine (the optimized interpreter, the register machine, the compiler and the unoptimized interpreter)
+ * and checks that they print exactly the same bytes and fail with the same error
+ */
+public class EnginesTest {
+    /**
+     * The inputs every program gets, most only use the first one or two<br>
+     * Every program also runs with inputs that aren't all ints, where compiled programs hand the run over to the interpreter
+     */
+    private static final List<String> INPUTS = List.of("12", "18", "3", "4");
+    private static final List<String> MIXED_INPUTS = List.of("12", "4.5", "abc", "true");
+
+    /**
+     * Programs covering loops, strings, input, the optimizer and the fusions, all of them compiled by the compiler
+     */
+    private static final List<String> PROGRAMS = List.of(
+            //arithmetic with literals and variables
+            "vBei2ilBnei3ipi1ilhBlvDed2.5dlDnei3ipi1ilhDlxl",
+            "hi2ini3ini4ilhi1ipi2ini3ipi4ilhi10imi2imi3ilhi7iqi2ipd0.5dlhi7iqi2iqi2ipd0.5dlhd1.5dnd2dpd0.25dlhsabspi1ipi2ilhi1ipi2ipsabslhcacpi1ilvAei0ilvBei0ilrAlti1000itBpeAnApi1iyi7ilApplzhBlhi2ipi3ini4ini5ilhi100iqi5iqi2ilhi17iyi5ini2ilvCei3ilvDed0.5dlhCnCnCpDlhCnCnCnClhDnDnDmDlvEei1ilEneCpi2ini3ilhElxl",
+            //for and while loops, counted and not, nested and with exits
+            "fvIei0ilkIlti3ikIpplthIlzvSei0ilfvIei0ilkIlti4ikIppltSpei2ilzhSlvNei5ilvJei0ilrJltNtJpei2ilzhJlvKei10ilrKgti0ithKlKmmlzvDed0.5dlrDltd2dthDlDpplzvMei0ilrMlti5itMpplMpplzhMlvPei0ilrPati3itPpplzhPlfvIei0ilkIleti2ikIppltSpeIlzhSlfvIei6ilkIgti0ikImei2iltSpei1ilzhSlfvAei0ilkAlti3ikAppltfvBei0ilkBltAkBppltSpeBlzzhSlfvIei0ilkIlti3ikIppltvZeIlhZlzvEei0ilrElti100itjEeti3ithElxlzEpplzxl",
+            //string, character, boolean and double comparisons
+            "vAesabcslvBesabcslvCesxyzsljAetBthi1ilzethi0ilzjAetCthi1ilzethi0ilzjAatCthi1ilzethi0ilzji1ieti2ioi1ieti1iai2ieti3ithi1ilzethi0ilzji1ieti1ixi2ieti2ithi1ilzethi0ilzvXecaclvYecbcljXltYthi1ilzjXgti50ithi1ilzvTebtruebljTeti1ithi1ilzvFed2.5dljFgti2ithi1ilzjAetsabcsthi9ilzxl",
+            //constant folding and dead code
+            "hi4ipi2ini3ilvAei5ilhAni2ini3ilhAmi2ini3ipi1ilhsxspi1ipi2ilhi1ipi2ipsxslAnei2ipi3ilhAlApei2ini3ilhAlji1igti2ithsnoslzethsyepslzjsasetsastvBei1ilhBlzethsbadslzri1ieti2ithsneverslzfvIei0ilki1igti2ikIpplthseslzji1ieti1ioAeti0ithschainslzji1ieti2iaAeti0ithsbadslzjAeti19ithsokslxlhsdeadslzhsafterslxl",
+            //a runtime error inside a loop
+            "vAei5ilvBei0ilrAgti0ithAlAmeAqBlzxl",
+            //a runtime error in the step of a fused loop
+            "vAei10ilrAgti0ithAlAqei0ilzxl",
+            //input, including hoisted and reused subexpressions
+            "vNei10ilvSei0ilvIei0ilrIltNqi2itSpeNqi2ilIpplzhSlvMei3ilfvJei0ilkJltMnMkJpplthJnMpMnMlzvKei0ilrKltMtvAeKpMnMlhAlhKpMnMlKpplzvTei0ilrTlti2ithupi1ilhupi1ilTpplzrIgti0iaNqi2igti1itImei1ilzhIlxl",
+            //input read after printing, and inside a loop
+            "vAeulhAlvBeulhBpAlxl",
+            "vIei0ilrIlti4itvXeulhXnIlIpplzxl"
+    );
+
+    /**
+     * Programs the compiler leaves to the interpreter: variables changing their type and combinations that always fail
+     */
+    private static final List<String> INTERPRETED_PROGRAMS = List.of(
+            //fused instructions falling back, a runtime error at the end
+            "vAei5ilvDed1.5dlvSesxyzslvCecqclvBebtrueblhAlhDlhSlhClhBlApplDpplCpplhAlhDlhClAnei3ilAeApDlhAlDeDqi2ilhDlvIei0ilvNei10ilrIltNthIljIeti3itIpei2ilNmeIlzIpplzhIlhNlvJei0ilrJlti5itjJeti2itJeJpd0.5dlzJpplzhJlvKei0ilvXei1ilrKlti20itKeKpXlXeXni2ilzhKlvMei7ilMeMqi0ilxl",
+            "vAei1ilji1ieti1ithAlAecxclzhAlhApi1ilxl",
+            //a combination that only fails once the optimizer removed the if that changes the type of A, in a loop that never runs
+            "vAebtrueblvCei0ilrCgti0iaAnAetbtruebtjd1dgtd2dtAecxclzCmmlzhi5ilxl",
+            //two failing combinations in one value, the one evaluated first is reported
+            "vAei1ilvBei1ilji1ieti1itAecxclBecyclzhi1ilhApd1.5dpBnBlxl",
+            "vAeulvSesxslhAlrAgti0itjAetSthsnoslzAmmlzxl"
+    );
+
+    @TestFactory
+    public List<DynamicTest> enginesAgree() throws IOException {
+        List<DynamicTest> tests = new ArrayList<>();
+        //examples.txt: a title line followed by the program, separated by empty lines
+        String[] examples = Files.readString(Path.of("examples.txt")).strip().split("\\R\\s*\\R");
+        for (String example : examples) {
+            String[] lines = example.strip().split("\\R");
+            tests.add(DynamicTest.dynamicTest(lines[0], () -> assertAgree(lines[1].strip(), true)));
+        }
+        for (int i = 0; i < PROGRAMS.size(); i++) {
+            String program = PROGRAMS.get(i);
+            tests.add(DynamicTest.dynamicTest("program " + i, () -> assertAgree(program, true)));
+        }
+        for (int i = 0; i < INTERPRETED_PROGRAMS.size(); i++) {
+            String program = INTERPRETED_PROGRAMS.get(i);
+            tests.add(DynamicTest.dynamicTest("interpreted program " + i, () -> assertAgree(program, false)));
+        }
+        return tests;
+    }
+
+    /**
+     * @param compiled Whether the compiler has to compile the program (instead of leaving it to the interpreter)
+     */
+    private static void assertAgree(String source, boolean compiled) {
+        LettercodeProgram program = Lettercode.compile(source);
+        if (compiled)
+            assertDoesNotThrow(() -> Compiler.compile(program.getInstructions(), program::run));
+        else
+            assertThrows(Compiler.UnsupportedException.class, () -> Compiler.compile(program.getInstructions(), program::run));
+        assertAgree(source, INPUTS);
+        assertAgree(source, MIXED_INPUTS);
+    }
+
+    private static void assertAgree(String source, List<String> inputs) {
+        Result expected = run(source, inputs, true, false, false);
+        assertTrue(expected.output.length > 0 || expected.error != null, "the program does nothing");
+        Result vm = run(source, inputs, true, false, true);
+        Result compiled = run(source, inputs, true, true, false);
+        Result unoptimized = run(source, inputs, false, false, false);
+        for (Result result : List.of(vm, compiled, unoptimized)) {
+            assertArrayEquals(expected.output, result.output);
+            assertEquals(expected.error, result.error);
+        }
+    }
+
+    /**
+     * Runs a program on an engine
+     * @return The bytes printed and the error message, null if it didn't fail
+     */
+    private static Result run(String source, List<String> inputs, boolean optimize, boolean compile, boolean vm) {
+        BiConsumer<InputProvider, OutputSink> engine = Lettercode.engine(Lettercode.compile(source, optimize), compile, vm);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BufferedOutput out = BufferedOutput.of(bytes);
+        String error = null;
+        try {
+            engine.accept(new ListInput(inputs), out);
+        } catch (LettercodeException e) {
+            error = e.getMessage();
+        }
+        out.flush();
+        return new Result(bytes.toByteArray(), error);
+    }
+
+    private record Result(byte[] output, String error) {}
+}
@@ -0,0 +1,121 @@
+package xeraction.lettercode;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import xeraction.lettercode.util.BufferedOutput;
+import xeraction.lettercode.util.ListInput;
+import xeraction.lettercode.util.ProgramFile;
+import xeraction.lettercode.util.TokenIterator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Records the Flight Recorder events of a small program to a file and checks their fields
+ */
+public class EventsTest {
+    /**
+     * A while loop running 5 times, starting at position 7, then a for loop running 3 times, starting at position 23
+     */
+    private static final String PROGRAM = "vIei0ilrIlti5itIpplzhIlfvJei0ilkJlti3ikJppltIpplzhIlxl";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void loopAndExecution() throws IOException {
+        List<RecordedEvent> events = record(() -> run(Lettercode.compile(PROGRAM)));
+
+        List<RecordedEvent> loops = events(events, "lettercode.Loop");
+        assertEquals(2, loops.size());
+        RecordedEvent loop = loops.getFirst();
+        assertEquals("while", loop.getString("kind"));
+        assertEquals(7, loop.getInt("index"));
+        assertEquals(5, loop.getLong("iterations"));
+        loop = loops.get(1);
+        assertEquals("for", loop.getString("kind"));
+        assertEquals(23, loop.getInt("index"));
+        assertEquals(3, loop.getLong("iterations"));
+
+        List<RecordedEvent> executions = events(events, "lettercode.Execution");
+        assertEquals(1, executions.size());
+        RecordedEvent execution = executions.getFirst();
+        assertEquals("interpreter", execution.getString("engine"));
+        assertEquals(execution.getLong("scopePushes"), execution.getLong("scopePops"));
+        assertTrue(execution.getLong("scopePushes") > 0);
+        assertTrue(execution.getInt("peakScopeDepth") > 0);
+        assertTrue(execution.getLong("variableLookups") > 0);
+        assertTrue(execution.getLong("allocated") > 0);
+    }
+
+    @Test
+    public void allocatedOnVirtualThread() throws IOException {
+        LettercodeProgram program = Lettercode.compile(PROGRAM);
+        List<RecordedEvent> executions = events(record(() -> {
+            try {
+                Thread.ofVirtual().start(() -> run(program)).join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }), "lettercode.Execution");
+        assertEquals(1, executions.size());
+        //a virtual thread can't measure its allocations
+        assertEquals(-1, executions.getFirst().getLong("allocated"));
+    }
+
+    @Test
+    public void parse() throws IOException {
+        Path file = directory.resolve("loop.lc");
+        Files.writeString(file, PROGRAM);
+
+        //without a precompiled file the program is parsed, with one event for the whole load
+        List<RecordedEvent> parses = events(record(() -> Lettercode.load(file)), "lettercode.Parse");
+        assertEquals(1, parses.size());
+        assertFalse(parses.getFirst().getBoolean("precompiled"));
+        assertEquals(PROGRAM.length(), parses.getFirst().getInt("sourceLength"));
+        assertEquals(6, parses.getFirst().getInt("instructions"));
+
+        ProgramFile.save(ProgramFile.of(file), PROGRAM, Lettercode.parse(new TokenIterator(PROGRAM), false));
+        parses = events(record(() -> Lettercode.load(file)), "lettercode.Parse");
+        assertEquals(1, parses.size());
+        assertTrue(parses.getFirst().getBoolean("precompiled"));
+        assertEquals(PROGRAM.length(), parses.getFirst().getInt("sourceLength"));
+        assertEquals(6, parses.getFirst().getInt("instructions"));
+    }
+
+    private static void run(LettercodeProgram program) {
+        program.run(new ListInput(List.of()), BufferedOutput.of(new ByteArrayOutputStream()));
+    }
+
+    /**
+     * Runs something with the Lettercode events enabled, recording to a file
+     * @return The recorded Lettercode events
+     */
+    private List<RecordedEvent> record(Runnable runnable) throws IOException {
+        Path file = Files.createTempFile(directory, "events", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("lettercode.Parse");
+            recording.enable("lettercode.Loop");
+            recording.enable("lettercode.Execution");
+            recording.start();
+            runnable.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file);
+    }
+
+    private static List<RecordedEvent> events(List<RecordedEvent> events, String name) {
+        return events.stream().filter(e -> e.getEventType().getName().equals(name)).toList();
+    }
+}